@@ -0,0 +1,210 @@
+/**
+ * Breadth-first search over an IndexedActorGraph that keeps all of its state in caller-supplied primitive arrays, so
+ * a search allocates nothing. The caller owns four buffers and reuses them from one search to the next:
+ *
+ *   dist       one slot per actor; must be all -1 before a search, holds hop counts from the source afterward
+ *   parent     one slot per actor; holds the actor each reached actor was discovered from (-1 for the source)
+ *   queue      one slot per actor; each actor is enqueued at most once, so the queue never wraps and afterward holds
+ *              the reached actors in the order they were visited
+ *   movieSeen  one slot per movie, all false before a search; only used on a BipartiteActorGraph, may be null otherwise
+ *   frontier   optional bitset with one bit per actor (see frontierBuffer), all clear before and after a search
+ *
+ * Given a frontier bitset, a search over a CompactActorGraph is direction-optimizing: once a level's actors have more
+ * edges between them than about a fourteenth of the edges of the actors not reached yet, the next level is found
+ * bottom-up instead, with every unreached actor scanning its own row for any neighbor in the frontier and stopping
+ * at the first. Near the middle of a search of a small-world graph like this one most actors are one hop from the
+ * frontier, so that scans a fraction of the edges expanding the frontier would. Once the frontier shrinks below about
+ * a twenty-fourth of the actors the search goes back to top-down. Searches over a BipartiteActorGraph are always
+ * top-down.
+ *
+ * Every search gives each reached actor the same distance and a parent one hop closer, and the queue holds the levels
+ * in order. The order of the actors within a level, and which of several closer co-stars becomes an actor's parent,
+ * are unspecified: they depend on the search direction, the graph mode and the actor IDs (see VertexOrder). Anything
+ * that lists actors to the user orders them itself (see Rankings).
+ *
+ * Each search is recorded in Metrics: its time, the actors it visited, the edges (or cast slots) it scanned and its
+ * widest level. The counts are kept in locals and recorded once per search, so the inner loops only gain an add.
+ *
+ * clear puts the buffers back in their starting state in time proportional to the previous search rather than the
+ * whole graph.
+ */
+public class BFSKernel {
+
+    private static final Metrics.Counter searches = Metrics.counter("bfs.searches");
+    private static final LatencyHistogram searchTime = Metrics.timer("bfs.time");
+    private static final LatencyHistogram visitedCount = Metrics.histogram("bfs.visited");
+    private static final LatencyHistogram scannedCount = Metrics.histogram("bfs.edgesScanned");
+    private static final LatencyHistogram frontierPeak = Metrics.histogram("bfs.frontierPeak");
+    private static final Metrics.Counter bottomUpLevels = Metrics.counter("bfs.bottomUpLevels");
+
+    // Beamer's thresholds: go bottom-up once the frontier's edges pass the unreached actors' edges / ALPHA, and back
+    // to top-down once the frontier has fewer than actors / BETA
+    private static final int ALPHA = 14, BETA = 24;
+
+    private BFSKernel() {}
+
+    /**
+     * Searches outward from source, filling dist, parent and queue, and returns how many actors were reached
+     * (including the source)
+     */
+    public static int search(IndexedActorGraph g, int source, int[] dist, int[] parent, int[] queue, boolean[] movieSeen) {
+        return search(g, source, dist, parent, queue, movieSeen, null);
+    }
+
+    /**
+     * Searches like the other search, going bottom-up for wide levels when given a frontier bitset (null searches
+     * top-down only)
+     */
+    public static int search(IndexedActorGraph g, int source, int[] dist, int[] parent, int[] queue, boolean[] movieSeen,
+                             long[] frontier) {
+        long start = Metrics.start();
+        if (g instanceof CompactActorGraph) {
+            return searchCoStars((CompactActorGraph) g, source, dist, parent, queue, frontier, start);
+        }
+        return searchMovies((BipartiteActorGraph) g, source, dist, parent, queue, movieSeen, start);
+    }
+
+    /**
+     * Returns a cleared frontier bitset for searching the given graph, or null if its searches are top-down only
+     */
+    public static long[] frontierBuffer(IndexedActorGraph g) {
+        return g instanceof CompactActorGraph ? new long[(g.numVertices() + 63) / 64] : null;
+    }
+
+    private static void record(long start, int reached, long scanned, int widest) {
+        if (!Metrics.ENABLED) return;
+        Metrics.time(searchTime, start);
+        searches.increment();
+        visitedCount.record(reached);
+        scannedCount.record(scanned);
+        frontierPeak.record(widest);
+    }
+
+    /**
+     * Takes the buffers of a search that reached the given number of actors and resets dist and movieSeen
+     */
+    public static void clear(IndexedActorGraph g, int reached, int[] dist, int[] queue, boolean[] movieSeen) {
+        for (int k = 0; k < reached; k++) dist[queue[k]] = -1;
+        // every movie a reached actor was in may have been marked
+        if (g instanceof BipartiteActorGraph) {
+            BipartiteActorGraph b = (BipartiteActorGraph) g;
+            for (int k = 0; k < reached; k++) {
+                for (int slot = b.movieStart(queue[k]); slot < b.movieEnd(queue[k]); slot++) movieSeen[b.movieAt(slot)] = false;
+            }
+        }
+    }
+
+    /**
+     * Searches co-star edges one level at a time, each level top-down or, given a frontier bitset, bottom-up
+     */
+    private static int searchCoStars(CompactActorGraph g, int source, int[] dist, int[] parent, int[] queue,
+                                     long[] frontier, long start) {
+        int head = 0, tail = 0;
+        queue[tail++] = source;
+        dist[source] = 0;
+        parent[source] = -1;
+        long scanned = 0;
+        int level = 0, widest = 0, bottomUp = 0;
+        // edges out of the current level, and out of every actor not reached yet
+        long levelEdges = degree(g, source), unreachedEdges = g.numEdges() - levelEdges;
+        boolean up = false;
+        // while the last level found anyone
+        while (head < tail) {
+            int levelEnd = tail, next = level+1;
+            widest = Math.max(widest, levelEnd - head);
+            if (frontier != null) {
+                if (!up) up = levelEdges > unreachedEdges / ALPHA;
+                else up = levelEnd - head >= g.numVertices() / BETA;
+            }
+            if (up) {
+                bottomUp++;
+                for (int k = head; k < levelEnd; k++) frontier[queue[k] >>> 6] |= 1L << queue[k];
+                // every actor not reached yet looks for a neighbor in the frontier, stopping at the first
+                for (int v = 0; v < dist.length; v++) {
+                    if (dist[v] >= 0) continue;
+                    for (int e = g.edgeStart(v); e < g.edgeEnd(v); e++) {
+                        int w = g.neighborAt(e);
+                        if ((frontier[w >>> 6] & 1L << w) != 0) {
+                            scanned += e - g.edgeStart(v) + 1;
+                            dist[v] = next;
+                            parent[v] = w;
+                            queue[tail++] = v;
+                            break;
+                        }
+                    }
+                    if (dist[v] < 0) scanned += g.edgeEnd(v) - g.edgeStart(v);
+                }
+                for (int k = head; k < levelEnd; k++) frontier[queue[k] >>> 6] = 0;
+            }
+            else {
+                for (int k = head; k < levelEnd; k++) {
+                    int v = queue[k];
+                    scanned += g.edgeEnd(v) - g.edgeStart(v);
+                    // check each neighbor, adding any that haven't been reached yet
+                    for (int e = g.edgeStart(v); e < g.edgeEnd(v); e++) {
+                        int w = g.neighborAt(e);
+                        if (dist[w] < 0) {
+                            dist[w] = next;
+                            parent[w] = v;
+                            queue[tail++] = w;
+                        }
+                    }
+                }
+            }
+            head = levelEnd;
+            level = next;
+            levelEdges = 0;
+            for (int k = head; k < tail; k++) levelEdges += degree(g, queue[k]);
+            unreachedEdges -= levelEdges;
+        }
+        if (bottomUp > 0) bottomUpLevels.add(bottomUp);
+        record(start, tail, scanned, widest);
+        return tail;
+    }
+
+    private static int degree(CompactActorGraph g, int id) {
+        return g.edgeEnd(id) - g.edgeStart(id);
+    }
+
+    /**
+     * Searches actor -> movie -> actor hops, expanding each movie only once; dist counts actor hops, i.e. half the
+     * bipartite hop count
+     */
+    private static int searchMovies(BipartiteActorGraph g, int source, int[] dist, int[] parent, int[] queue,
+                                    boolean[] movieSeen, long start) {
+        int head = 0, tail = 0;
+        queue[tail++] = source;
+        dist[source] = 0;
+        parent[source] = -1;
+        long scanned = 0;
+        int level = -1, widest = 0;
+        // while the queue still has actors to visit
+        while (head < tail) {
+            int v = queue[head++];
+            int next = dist[v]+1;
+            // the first actor of a level finds the whole level, and nothing deeper, waiting in the queue
+            if (dist[v] != level) {
+                level = dist[v];
+                widest = Math.max(widest, tail - head + 1);
+            }
+            scanned += g.movieEnd(v) - g.movieStart(v);
+            // hop to each movie no earlier actor has expanded, then on to the rest of its cast
+            for (int k = g.movieStart(v); k < g.movieEnd(v); k++) {
+                int m = g.movieAt(k);
+                if (movieSeen[m]) continue;
+                movieSeen[m] = true;
+                scanned += g.castEnd(m) - g.castStart(m);
+                for (int c = g.castStart(m); c < g.castEnd(m); c++) {
+                    int w = g.castAt(c);
+                    if (dist[w] < 0) {
+                        dist[w] = next;
+                        parent[w] = v;
+                        queue[tail++] = w;
+                    }
+                }
+            }
+        }
+        record(start, tail, scanned, widest);
+        return tail;
+    }
+}
@@ -0,0 +1,258 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers a file of p queries in one pass instead of one prompt at a time. Each line of the query file is
+ * actor|center, or just an actor to use Kevin Bacon as the center. The queries are read once and grouped by center,
+ * then the groups are handed out to worker threads like CentralityEngine hands out sources: each worker owns one
+ * ShortestPathTree, searches it once from a group's center and walks every query in the group up its parents, so
+ * a center's search runs once however many of its queries there are. A center with fewer than bacon.batch.minTree
+ * queries (default 64) isn't worth a whole search, and its queries get a BidirectionalSearch each instead. The default
+ * is the measured break-even: on synthetic casts of 17k and 340k actors one full search took as long as about 50 and
+ * about 100 bidirectional searches between random pairs, so below 64 queries the separate searches come out ahead.
+ *
+ * Results are streamed to the output file as workers finish them, so they come out grouped by center rather than in
+ * input order; each one starts with the 1-based line number of its query:
+ *
+ *   line|number|actor|movie|actor|...|movie|center     path from actor to center, one shared movie per hop
+ *   line|-1                                           actor can't reach center
+ *   line|ERR message                                  actor or center isn't in the graph
+ *
+ * With bacon.batch.paths=false only line|number is written. Memory is bounded by the queries themselves (three ints
+ * each while they're grouped) plus one tree and one output buffer per worker; no results are held.
+ */
+public class BaconBatch {
+
+    private static final String DEFAULT_CENTER = "Kevin Bacon";
+    private static final int FLUSH_CHARS = 1 << 16;      // a worker's buffered output before it's written out
+    private static final int MIN_TREE = Integer.getInteger("bacon.batch.minTree", 64);
+    private static final boolean PATHS = Boolean.parseBoolean(System.getProperty("bacon.batch.paths", "true"));
+    private static final LatencyHistogram pathTime = Metrics.timer("path.search");
+
+    private final IndexedActorGraph g;
+    private final ComponentIndex components;
+    private final int parallelism;
+
+    /**
+     * Takes the loaded graph, the component index built over it and the number of worker threads to search it with
+     */
+    public BaconBatch(IndexedActorGraph g, ComponentIndex components, int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        this.g = g;
+        this.components = components;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Takes the loaded graph and component index and uses one worker per available processor, or the bacon.threads
+     * system property if it is set
+     */
+    public BaconBatch(IndexedActorGraph g, ComponentIndex components) {
+        this(g, components, Integer.getInteger("bacon.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Takes the names of a query file and an output file, answers every query and returns a one-line summary
+     */
+    public String run(String queryPathName, String resultPathName) throws IOException {
+        long start = Metrics.start();
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(resultPathName), StandardCharsets.UTF_8), FLUSH_CHARS)) {
+            Queries queries = read(queryPathName, out);
+            long[] keys = queries.byCenter();
+            // each group is a run of keys with the same center
+            int[] groupStarts = new int[keys.length+1];
+            int groups = 0;
+            for (int k = 0; k < keys.length; k++) {
+                if (k == 0 || keys[k] >>> 32 != keys[k-1] >>> 32) groupStarts[groups++] = k;
+            }
+            groupStarts[groups] = keys.length;
+
+            AtomicInteger next = new AtomicInteger();
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                for (int t = 0; t < parallelism; t++) {
+                    tasks.add(pool.submit(new Worker(queries, keys, groupStarts, groups, next, out)));
+                }
+                for (ForkJoinTask<?> task : tasks) task.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Batch interrupted");
+            }
+            // a worker that couldn't write hands its IOException back through the task
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+                throw new IOException(e.getCause());
+            }
+            finally {
+                pool.shutdown();
+            }
+            Metrics.counter("batch.queries").add(queries.size);
+            Metrics.counter("batch.centers").add(groups);
+            Metrics.time(Metrics.timer("batch.total"), start);
+            return "Answered " + queries.size + " of " + queries.lines + " query lines (" + queries.skipped + " skipped) against " + groups
+                    + " centers in " + (System.nanoTime() - start) / 1000000 + " ms";
+        }
+    }
+
+    /**
+     * Reads the query file, writing an error straight away for each query naming an actor not in the graph and
+     * keeping the rest as IDs
+     */
+    private Queries read(String queryPathName, Writer out) throws IOException {
+        Queries queries = new Queries();
+        try (BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(queryPathName), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = input.readLine()) != null) {
+                queries.lines++;
+                if (line.trim().isEmpty()) {
+                    queries.skipped++;
+                    continue;
+                }
+                // split into actor and center, which contain spaces but never '|'
+                int bar = line.indexOf('|');
+                String actor = bar < 0 ? line : line.substring(0, bar);
+                String center = bar < 0 ? DEFAULT_CENTER : line.substring(bar+1);
+                int a = g.idOf(actor), c = g.idOf(center);
+                if (a < 0 || c < 0) {
+                    out.write(queries.lines + "|ERR Can't find actor " + (a < 0 ? actor : center) + "\n");
+                    queries.skipped++;
+                }
+                else queries.add(queries.lines, a, c);
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * The valid queries read so far, as parallel arrays of line number, actor ID and center ID
+     */
+    private static class Queries {
+        int lines = 0, skipped = 0, size = 0;
+        int[] line = new int[1024], actor = new int[1024], center = new int[1024];
+
+        void add(int lineNumber, int a, int c) {
+            if (size == line.length) {
+                line = Arrays.copyOf(line, size*2);
+                actor = Arrays.copyOf(actor, size*2);
+                center = Arrays.copyOf(center, size*2);
+            }
+            line[size] = lineNumber;
+            actor[size] = a;
+            center[size++] = c;
+        }
+
+        /**
+         * Returns the query indices packed under their center IDs and sorted, so each center's queries form a run;
+         * the center array isn't needed after this and is dropped
+         */
+        long[] byCenter() {
+            long[] keys = new long[size];
+            for (int k = 0; k < size; k++) keys[k] = (long) center[k] << 32 | k;
+            center = null;
+            Arrays.parallelSort(keys);
+            return keys;
+        }
+    }
+
+    /**
+     * Claims groups one at a time and answers their queries, reusing one tree and one search for every group
+     */
+    private class Worker implements Runnable {
+        private final Queries queries;
+        private final long[] keys;
+        private final int[] groupStarts;
+        private final int groups;
+        private final AtomicInteger next;
+        private final Writer out;
+        private final ShortestPathTree tree = new ShortestPathTree(g);
+        private final BidirectionalSearch search = new BidirectionalSearch(g);
+        private final StringBuilder buffer = new StringBuilder(FLUSH_CHARS + 1024);
+
+        Worker(Queries queries, long[] keys, int[] groupStarts, int groups, AtomicInteger next, Writer out) {
+            this.queries = queries;
+            this.keys = keys;
+            this.groupStarts = groupStarts;
+            this.groups = groups;
+            this.next = next;
+            this.out = out;
+        }
+
+        public void run() {
+            int group;
+            while ((group = next.getAndIncrement()) < groups) {
+                int from = groupStarts[group], to = groupStarts[group+1];
+                int center = (int) (keys[from] >>> 32);
+                boolean searched = to - from >= MIN_TREE;
+                if (searched) tree.search(center);
+                for (int k = from; k < to; k++) {
+                    int q = (int) keys[k];
+                    buffer.append(queries.line[q]).append('|');
+                    if (searched) answerFromTree(queries.actor[q]);
+                    else answerAlone(queries.actor[q], center);
+                    buffer.append('\n');
+                    if (buffer.length() >= FLUSH_CHARS) flush();
+                }
+            }
+            flush();
+        }
+
+        /**
+         * Appends an actor's number and path, walking up the parents of the tree searched from their center
+         */
+        private void answerFromTree(int actor) {
+            int number = tree.distanceOf(actor);
+            buffer.append(number);
+            if (!PATHS || number < 0) return;
+            for (int v = actor; tree.parentOf(v) >= 0; v = tree.parentOf(v)) appendHop(v, tree.parentOf(v));
+            buffer.append('|').append(tree.root());
+        }
+
+        /**
+         * Appends an actor's number and path from a search between just the two of them
+         */
+        private void answerAlone(int actor, int center) {
+            if (!components.connected(g.nameOf(actor), g.nameOf(center))) {
+                buffer.append(-1);
+                return;
+            }
+            long start = Metrics.start();
+            List<String> path = search.path(g.nameOf(actor), g.nameOf(center));
+            Metrics.time(pathTime, start);
+            buffer.append(path.size()-1);
+            if (!PATHS) return;
+            for (int k = 0; k < path.size()-1; k++) appendHop(g.idOf(path.get(k)), g.idOf(path.get(k+1)));
+            buffer.append('|').append(path.get(path.size()-1));
+        }
+
+        /**
+         * Appends one step of a path: the actor, then the first of the movies they made with the next actor
+         */
+        private void appendHop(int u, int v) {
+            String actor = g.nameOf(u);
+            buffer.append('|').append(actor).append('|').append(g.getLabel(actor, g.nameOf(v)).iterator().next());
+        }
+
+        /**
+         * Writes out what's buffered, one worker at a time so lines never interleave
+         */
+        private void flush() {
+            if (buffer.length() == 0) return;
+            try {
+                synchronized (out) {
+                    out.append(buffer);
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import com.sun.management.ThreadMXBean;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Benchmarks the load, build, search, path and centrality steps of BaconGame on synthetic inputs of several sizes,
+ * reporting time per operation and bytes allocated per operation so graph and search changes can be checked for
+ * regressions. Each synthetic dataset has power-law cast sizes and a few very popular actors, like the real data;
+ * actor 1 is "Kevin Bacon" and is the most popular.
+ *
+ * This is a quick runner: a few warmed-up runs of each operation in one JVM, with no forking or steady-state checks.
+ * The JMH module (src/jmh/java/bench, run with gradle jmh, see build.gradle) benchmarks the same operations with its
+ * GC profiler and is the one to compare changes with.
+ *
+ * Usage: java BaconBenchmark [sizes] [benchmark names...]
+ *   sizes defaults to 10000,100000,1000000 actors; with no names every benchmark runs.
+ * The legacy AdjacencyMapGraph build is skipped above bacon.bench.legacyMax actors (default 100000) and the full c
+ * ranking above bacon.bench.centralityMax (default 10000), since both grow too fast to finish at 1M. The c ranking
+ * lists the best bacon.bench.centers actors (default 10), as the c command would.
+ *
+ * Allocation is read from the JVM's per-thread allocation counters (com.sun.management.ThreadMXBean, the ones JMH's
+ * gc profiler reads), summed over every thread including pool threads that have since ended
+ * (getTotalThreadAllocatedBytes), so work handed to pools (GraphLoader.load, the c and e rankings, parallel sorts)
+ * is counted too. The sum also takes in whatever other threads allocate meanwhile, which is little next to a
+ * benchmarked operation. On a JVM older than 21 without that sum, only the benchmark thread's own counter is read,
+ * and the column is headed "B alloc/op (caller)" to say so.
+ */
+public class BaconBenchmark {
+
+    private static final int WARMUPS = Integer.getInteger("bacon.bench.warmups", 3);
+    private static final int ITERATIONS = Integer.getInteger("bacon.bench.iterations", 5);
+    private static final int LEGACY_MAX = Integer.getInteger("bacon.bench.legacyMax", 100000);
+    private static final int CENTRALITY_MAX = Integer.getInteger("bacon.bench.centralityMax", 10000);
+    private static final int CENTERS = Integer.getInteger("bacon.bench.centers", 10);     // k asked of the c ranking
+    private static final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final Method totalAllocated = totalAllocatedMethod();    // null if only the caller can be counted
+
+    private static Set<String> selected;
+    private static volatile Object sink;                             // keeps results alive so they aren't optimized away
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = {10000, 100000, 1000000};
+        if (args.length > 0) {
+            String[] pieces = args[0].split(",");
+            sizes = new int[pieces.length];
+            for (int k = 0; k < pieces.length; k++) sizes[k] = Integer.parseInt(pieces[k].trim());
+        }
+        selected = new HashSet<>(Arrays.asList(args).subList(Math.min(1, args.length), args.length));
+
+        System.out.printf("%-24s %9s %14s %19s %12s%n", "benchmark", "actors", "ms/op",
+                totalAllocated != null ? "B alloc/op" : "B alloc/op (caller)", "MB/s alloc");
+        for (int size : sizes) {
+            File dir = Files.createTempDirectory("bacon-bench").toFile();
+            try {
+                run(size, dir);
+                sink = null;
+            }
+            finally {
+                for (File f : dir.listFiles()) f.delete();
+                dir.delete();
+            }
+        }
+    }
+
+    /**
+     * Runs every selected benchmark against one synthetic dataset
+     */
+    private static void run(int size, File dir) throws IOException {
+        final String actors = new File(dir, "actors.txt").getPath();
+        final String movies = new File(dir, "movies.txt").getPath();
+        final String movieActors = new File(dir, "movie-actors.txt").getPath();
+        writeSynthetic(size, actors, movies, movieActors, new Random(size));
+
+        measure("fileNameToMap", size, () -> BaconGame.fileNameToMap(actors));
+        measure("mapMoviesToActors", size, () -> BaconGame.mapMoviesToActors(actors, movies, movieActors));
+        if (size <= LEGACY_MAX) measure("buildGraph", size, () -> BaconGame.buildGraph(actors, movies, movieActors));
+        else skip("buildGraph", size);
+        measure("GraphLoader.load", size, () -> new GraphLoader().load(actors, movies, movieActors));
+
+        final BipartiteActorGraph casts = new GraphLoader().load(actors, movies, movieActors);
+        measure("buildCompactGraph", size, () -> CompactActorGraph.fromBipartite(casts));
+        final CompactActorGraph g = CompactActorGraph.fromBipartite(casts);
+        final String center = "Kevin Bacon";
+
+        measure("bfs", size, () -> BaconGame.bfs(g, center));
+        final ShortestPathTree tree = new ShortestPathTree(g);
+        measure("ShortestPathTree.search", size, () -> tree.search(center));
+        measure("bfs bipartite", size, () -> new ShortestPathTree(casts).search(center));
+        // the same search with no bottom-up levels, to compare against the direction-optimizing one above
+        final int[] dist = new int[g.numVertices()], parent = new int[g.numVertices()], queue = new int[g.numVertices()];
+        Arrays.fill(dist, -1);
+        measure("search top-down", size, () -> {
+            int reached = BFSKernel.search(g, g.idOf(center), dist, parent, queue, null);
+            BFSKernel.clear(g, reached, dist, queue, null);
+            return reached;
+        });
+
+        // path queries go to the actors farthest from the center
+        final Graph<String,Set<String>> legacyTree = BaconGame.bfs(g, center);
+        tree.search(center);
+        final String far = g.nameOf(tree.reachedAt(tree.numVertices()-1));
+        measure("getPath", size, () -> BaconGame.getPath(legacyTree, far));
+        measure("getPath tree", size, () -> BaconGame.getPath(tree, far));
+        final String[] pairs = new String[200];
+        Random random = new Random(1);
+        for (int k = 0; k < pairs.length; k++) pairs[k] = g.nameOf(tree.reachedAt(random.nextInt(tree.numVertices())));
+        measure("shortestPath x200", size, () -> {
+            int hops = 0;
+            for (String actor : pairs) hops += BaconGame.shortestPath(g, actor, center).size();
+            return hops;
+        });
+
+        measure("averageSeparation", size, () -> BaconGame.averageSeparation(legacyTree, center));
+        measure("averageSeparation tree", size, () -> BaconGame.averageSeparation(tree));
+        // the whole c command: every actor's average separation, then the best centers from it
+        if (size <= CENTRALITY_MAX) measure("c ranking", size, () -> Rankings.centers(g, new CentralityEngine(g).averageSeparations(), CENTERS));
+        else skip("c ranking", size);
+        final ComponentIndex components = new ComponentIndex(g);
+        measure("e ranking x16", size, () -> new SampledCentrality(g, components).sampleUpTo(16).separations());
+
+        // searches under each vertex order, plus a random one standing in for IDs with no locality at all; the
+        // synthetic files already list popular actors first, which is most of what the degree order does
+        measure("reorder bfs", size, () -> VertexOrder.apply(casts, "bfs"));
+        measure("reorder degree", size, () -> VertexOrder.apply(casts, "degree"));
+        int[] shuffled = new int[casts.numVertices()];
+        for (int k = 0; k < shuffled.length; k++) shuffled[k] = k;
+        for (int k = shuffled.length-1; k > 0; k--) {
+            int swap = random.nextInt(k+1), id = shuffled[k];
+            shuffled[k] = shuffled[swap];
+            shuffled[swap] = id;
+        }
+        for (String order : new String[] {"shuffled", "none", "bfs", "degree"}) {
+            BipartiteActorGraph relabeled = order.equals("shuffled") ? casts.relabel(shuffled) : VertexOrder.apply(casts, order);
+            final ShortestPathTree ordered = new ShortestPathTree(CompactActorGraph.fromBipartite(relabeled));
+            measure("search " + order, size, () -> ordered.search(center));
+            final ShortestPathTree orderedCasts = new ShortestPathTree(relabeled);
+            measure("bipartite " + order, size, () -> orderedCasts.search(center));
+        }
+    }
+
+    /**
+     * Warms an operation up, then times it and prints the mean and spread per operation plus allocation
+     */
+    private static void measure(String name, int size, Supplier<?> op) {
+        if (!selected.isEmpty() && !selected.contains(name)) return;
+        for (int k = 0; k < WARMUPS; k++) sink = op.get();
+        double[] millis = new double[ITERATIONS];
+        long allocated = 0;
+        for (int k = 0; k < ITERATIONS; k++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            sink = op.get();
+            millis[k] = (System.nanoTime() - start) / 1e6;
+            allocated += allocatedBytes() - allocatedBefore;
+        }
+        double mean = 0, spread = 0;
+        for (double m : millis) mean += m / ITERATIONS;
+        for (double m : millis) spread += (m - mean) * (m - mean) / ITERATIONS;
+        long bytesPerOp = allocated / ITERATIONS;
+        System.out.printf("%-24s %9d %8.3f +-%5.2f %19d %12.1f%n", name, size, mean, Math.sqrt(spread), bytesPerOp,
+                mean > 0 ? bytesPerOp / (double) (1 << 20) * 1000 / mean : 0);
+    }
+
+    /**
+     * Returns the bytes allocated so far by every thread, or by this one if the JVM can't sum them
+     */
+    private static long allocatedBytes() {
+        if (totalAllocated != null) {
+            try {
+                return (Long) totalAllocated.invoke(threads);
+            }
+            // the sum exists but couldn't be read, which the header can no longer say, so fail loudly
+            catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Returns ThreadMXBean.getTotalThreadAllocatedBytes if this JVM has it (Java 21 on) and it is enabled, else null
+     */
+    private static Method totalAllocatedMethod() {
+        try {
+            Method total = ThreadMXBean.class.getMethod("getTotalThreadAllocatedBytes");
+            return (Long) total.invoke(threads) >= 0 ? total : null;
+        }
+        // no sum over threads here, so fall back to the caller's own counter
+        catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static void skip(String name, int size) {
+        if (selected.isEmpty() || selected.contains(name)) System.out.printf("%-24s %9d %14s%n", name, size, "skipped");
+    }
+
+    /**
+     * Writes actors.txt, movies.txt and movie-actors.txt for a synthetic dataset with the given number of actors and
+     * half as many movies. Cast sizes follow a Pareto distribution (most casts are a handful of people, a few are
+     * hundreds) and actors are drawn with a quadratic bias toward low IDs, so some actors are in far more movies
+     * than others.
+     */
+    static void writeSynthetic(int actors, String IDtoActorPathName, String IDtoMoviePathName, String IDtoIDPathName,
+                               Random random) throws IOException {
+        int movies = Math.max(1, actors / 2);
+        try (PrintWriter out = new PrintWriter(IDtoActorPathName)) {
+            out.println("1|Kevin Bacon");
+            for (int id = 2; id <= actors; id++) out.println(id + "|Actor " + id);
+        }
+        try (PrintWriter out = new PrintWriter(IDtoMoviePathName)) {
+            for (int id = 1; id <= movies; id++) out.println(id + "|Movie " + id);
+        }
+        try (PrintWriter out = new PrintWriter(IDtoIDPathName)) {
+            Set<Integer> cast = new HashSet<>();
+            for (int movie = 1; movie <= movies; movie++) {
+                int castSize = (int) Math.min(Math.min(250, actors), 2 / Math.pow(1 - random.nextDouble(), 1 / 1.5));
+                cast.clear();
+                while (cast.size() < castSize) cast.add((int) (actors * Math.pow(random.nextDouble(), 2)) + 1);
+                for (int actor : cast) out.println(movie + "|" + actor);
+            }
+        }
+    }
+}
@@ -17,12 +17,23 @@ public class BaconGame {
     static final String IDtoActor = "inputs/actors.txt";
     static final String IDtoMovie = "inputs/movies.txt";
     static final String movieIDtoActorID ="inputs/movie-actors.txt";
+    // binary snapshot of the built graph, rewritten whenever the text files change
+    static final String graphSnapshot = "inputs/graph.snapshot";
+    // actors per component added to the sample each round when e keeps sampling until its ranking settles
+    static final int sampleBatch = Integer.getInteger("bacon.sample.batch", 16);
+
+    // one bidirectional search per thread for shortestPath, since its buffers can't be shared
+    private static final ThreadLocal<BidirectionalSearch> pairSearch = new ThreadLocal<>();
+    // timers for the per-query steps, looked up once since they run on every query
+    private static final LatencyHistogram pathTime = Metrics.timer("path.search");
+    private static final LatencyHistogram pathVisited = Metrics.histogram("path.visited");
 
     /**
      * Takes a file with IDs and their related names (either movies or actors) and
      * maps the movies or actors to their IDs
      */
     public static Map<String,String> fileNameToMap(String fileName) {
+        long start = Metrics.start();
         BufferedReader input;
         // initialize map
         Map<String,String> map = new HashMap<>();
@@ -51,6 +62,7 @@ public class BaconGame {
         catch (IOException e) {
             System.err.println("IO error while reading.\n" + e.getMessage());
         }
+        Metrics.time(Metrics.timer("load.fileNameToMap"), start);
         // return completed map
         return map;
     }
@@ -61,6 +73,7 @@ public class BaconGame {
      * the actor names that appear in them
      */
     public static Map<String,Set<String>> mapMoviesToActors(String IDtoActorPathName,String IDtoMoviePathName,String IDtoIDPathName) {
+        long start = Metrics.start();
         // map actor IDs to actor names and movie IDs to movie names
         Map<String,String> IDtoActor = fileNameToMap(IDtoActorPathName);
         Map<String,String> IDtoMovie = fileNameToMap(IDtoMoviePathName);
@@ -96,6 +109,7 @@ public class BaconGame {
         catch (IOException e) {
             System.err.println("IO error while reading.\n" + e.getMessage());
         }
+        Metrics.time(Metrics.timer("load.mapMoviesToActors"), start);
         // return completed map
         return moviesToActors;
     }
@@ -109,6 +123,7 @@ public class BaconGame {
         // maps movies to actors
         Map<String,Set<String>> moviesToActors = mapMoviesToActors(IDtoActorPathName,IDtoMoviePathName,IDtoIDPathName);
         Graph<String,Set<String>> graph = new AdjacencyMapGraph<>();
+        long start = Metrics.start();
 
         // iterate over movies
         for (String movie: moviesToActors.keySet()) {
@@ -121,6 +136,9 @@ public class BaconGame {
                 }
             }
         }
+        Metrics.time(Metrics.timer("load.insertVertices"), start);
+        Metrics.counter("load.verticesInserted").add(graph.numVertices());
+        start = Metrics.start();
 
         // iterate over movies
         for (String movie: moviesToActors.keySet()) {
@@ -141,16 +159,59 @@ public class BaconGame {
                 }
             }
         }
+        Metrics.time(Metrics.timer("load.insertEdges"), start);
+        Metrics.counter("load.edgesInserted").add(graph.numEdges());
         // return completed graph
         return graph;
     }
 
+    /**
+     * Takes names of the same three files as buildGraph and creates an immutable CompactActorGraph with the same
+     * vertices and edge labels, stored in primitive arrays rather than maps and per-edge HashSets
+     */
+    public static CompactActorGraph buildCompactGraph(String IDtoActorPathName,String IDtoMoviePathName,String IDtoIDPathName) {
+        // maps movies to actors, then packs them into the compact graph
+        return CompactActorGraph.fromMoviesToActors(mapMoviesToActors(IDtoActorPathName,IDtoMoviePathName,IDtoIDPathName));
+    }
+
+    /**
+     * Takes names of the same three files as buildGraph and creates a BipartiteActorGraph that only stores which actors
+     * appeared in which movies, exposing co-star edges lazily instead of inserting one per pair of cast members
+     */
+    public static BipartiteActorGraph buildBipartiteGraph(String IDtoActorPathName,String IDtoMoviePathName,String IDtoIDPathName) {
+        // maps movies to actors, then links each actor to their movies
+        return BipartiteActorGraph.fromMoviesToActors(mapMoviesToActors(IDtoActorPathName,IDtoMoviePathName,IDtoIDPathName));
+    }
+
+    /**
+     * Takes the name of a snapshot file and the same three text files as buildGraph, and loads the graph from the
+     * snapshot if it is up to date; otherwise builds it from the text files and writes a new snapshot for next time
+     */
+    public static IndexedActorGraph loadGraph(boolean bipartite, String snapshotPathName, String IDtoActorPathName,String IDtoMoviePathName,String IDtoIDPathName) {
+        // actor IDs are laid out in the order named by bacon.order (see VertexOrder), kept in the snapshot as well
+        String order = System.getProperty("bacon.order", "none");
+        IndexedActorGraph g = GraphSnapshot.read(snapshotPathName, bipartite, order, IDtoActorPathName, IDtoMoviePathName, IDtoIDPathName);
+        if (g != null) return g;
+        // no usable snapshot, so parse the text files in parallel, renumber the actors and save what we built
+        GraphLoader loader = new GraphLoader();
+        BipartiteActorGraph casts = VertexOrder.apply(loader.load(IDtoActorPathName,IDtoMoviePathName,IDtoIDPathName), order);
+        System.err.println(loader.report());
+        if (bipartite) {
+            GraphSnapshot.write(snapshotPathName, casts, null, order, IDtoActorPathName, IDtoMoviePathName, IDtoIDPathName);
+            return casts;
+        }
+        CompactActorGraph compact = CompactActorGraph.fromBipartite(casts);
+        GraphSnapshot.write(snapshotPathName, casts, compact, order, IDtoActorPathName, IDtoMoviePathName, IDtoIDPathName);
+        return compact;
+    }
+
     /**
      * Takes a graph and a vertex from that graph and creates a shortest path tree with that vertex as the root in which
      * all children point toward that vertex
      */
 
     public static <V,E> Graph<V,E> bfs(Graph<V,E> g, V source) {
+        long start = Metrics.start();
         Graph<V,E> pathTree = new AdjacencyMapGraph<>();
         Queue<V> queue = new LinkedList<V>();
 
@@ -178,6 +239,7 @@ public class BaconGame {
                 }
             }
         }
+        Metrics.time(Metrics.timer("bfs.legacy"), start);
         // return completed graph
         return pathTree;
     }
@@ -186,6 +248,7 @@ public class BaconGame {
      * Takes a shortest path graph and a vertex in that graph and finds the shortest path back to the root as a list
      */
     public static <V,E> List<V> getPath(Graph<V,E> tree, V v) {
+        long start = Metrics.start();
         List<V> shortestPath = new ArrayList<>();
         // if vertex isn't in tree
         if (!tree.hasVertex(v)) {
@@ -204,10 +267,40 @@ public class BaconGame {
                 v = neighbor;
             }
         }
+        Metrics.time(Metrics.timer("path.getPath"), start);
         // return the completed list
         return shortestPath;
     }
 
+    /**
+     * Takes a ShortestPathTree and an actor in it and finds the shortest path back to the root as a list, following
+     * parent IDs instead of walking the tree's Graph view
+     */
+    public static List<String> getPath(ShortestPathTree tree, String v) {
+        return tree.path(v);
+    }
+
+    /**
+     * Takes a graph and two of its actors and finds a shortest path from the first to the second with a bidirectional
+     * search, in the same shape getPath returns from a tree rooted at the second; the movies along it can be read
+     * with g.getLabel. Returns an empty list if there is no path.
+     */
+    public static List<String> shortestPath(IndexedActorGraph g, String a, String b) {
+        // reuse this thread's search buffers as long as it keeps querying the same graph
+        BidirectionalSearch search = pairSearch.get();
+        if (search == null || search.graph() != g) {
+            search = new BidirectionalSearch(g);
+            pairSearch.set(search);
+        }
+        long start = Metrics.start();
+        List<String> path = search.path(a, b);
+        if (Metrics.ENABLED) {
+            Metrics.time(pathTime, start);
+            pathVisited.record(search.lastVisited());
+        }
+        return path;
+    }
+
     /**
      * Takes a graph and subgraph and determines which nodes are missing from the subgraph
      */
@@ -230,10 +323,24 @@ public class BaconGame {
      * back to the root
      */
     public static <V,E> double averageSeparation(Graph<V,E> tree, V root) {
+        // a ShortestPathTree already knows its total separation
+        if (tree instanceof ShortestPathTree) return averageSeparation((ShortestPathTree) tree);
         // find total vertices; don't include the root itself as a vertex
         int vertices = tree.numVertices()-1;
-        // run helper method to find total separation from root
-        int total = totalSeparation(1,tree,root);
+        // walk down from the root a level at a time, adding each level's depth once per vertex on it
+        long total = 0;
+        int level = 0;
+        List<V> current = new ArrayList<>();
+        current.add(root);
+        while (!current.isEmpty()) {
+            level++;
+            List<V> next = new ArrayList<>();
+            for (V vertex : current) {
+                for (V child : tree.inNeighbors(vertex)) next.add(child);
+            }
+            total += (long) level * next.size();
+            current = next;
+        }
         // check that vertices isn't 0 to avoid dividing by 0
         if (vertices != 0) {
             // return total separation by number of non-root vertices as a double
@@ -241,46 +348,81 @@ public class BaconGame {
         }
         return 0;
     }
+
     /**
-     * Takes the starting level (0), a graph, and its root, and finds the total distance from every vertex on the graph
-     * back to the root
+     * Takes a ShortestPathTree and finds the average distance from its actors back to the root
      */
-    public static <V,E> int totalSeparation(int level, Graph<V,E> tree, V root) {
-        // total for each level starts at 0
-        int total = 0;
-        // for each neighbor
-        for (V neighbor: tree.inNeighbors(root)) {
-            // add the current level to total
-            total += level;
-            // and recursively run total separation, incrementing the level
-            total += totalSeparation(level+1,tree,neighbor);
-        }
-        // return total separation as an int
-        return total;
+    public static double averageSeparation(ShortestPathTree tree) {
+        // don't include the root itself, and avoid dividing by 0
+        int vertices = tree.numVertices()-1;
+        if (vertices > 0) return 1.0 * tree.totalSeparation() / vertices;
+        return 0;
     }
 
     public static void main(String[] args) {
-        // create comparator (used later in main method to sort maps of actors to various stats)
-        Comparator<Map.Entry<String, Double>> comparator = new Comparator<Map.Entry<String, Double>>() {
-            public int compare(Map.Entry<String, Double> e1, Map.Entry<String, Double> e2) {
-                Double d1 = e1.getValue();
-                Double d2 = e2.getValue();
-                return d1.compareTo(d2);
-            }
-        };
-
-        // build a master graph with all the actors and movies
-        Graph g = buildGraph(IDtoActor,IDtoMovie,movieIDtoActorID);
+        // build a master graph with all the actors and movies; "bipartite" keeps actors and movies as separate nodes
+        // instead of materializing every co-star edge, so very large inputs fit in memory; a snapshot of the graph is
+        // loaded instead of the text files whenever it is up to date; "server" answers requests over a local socket
+        // instead of reading commands from the console; "batch <queries> <results>" answers a file of p queries
+        boolean bipartite = Arrays.asList(args).contains("bipartite");
+        boolean server = Arrays.asList(args).contains("server");
+        int batch = Arrays.asList(args).indexOf("batch");
+        if (batch >= 0 && batch+2 >= args.length) {
+            System.err.println("Usage: batch <query file> <result file>");
+            return;
+        }
+        IndexedActorGraph g = loadGraph(bipartite,graphSnapshot,IDtoActor,IDtoMovie,movieIDtoActorID);
         // start the center of the universe as Kevin Bacon (can be changed)
         String curCenter = "Kevin Bacon";
+        // shortest path trees for recently used centers, so commands against an unchanged center don't search again
+        ShortestPathTreeCache trees = new ShortestPathTreeCache(g);
+        // which actors are connected to which, so reachability questions don't need a search at all
+        ComponentIndex components = new ComponentIndex(g);
+        // applies daily delta files of cast changes to the graph without reloading it
+        GraphDelta deltas = new GraphDelta(IDtoActor,IDtoMovie);
+        // report the tree cache alongside the other metrics, and dump them all to a file on a schedule if asked to
+        Metrics.gauge("cache.trees.size", trees::size);
+        Metrics.gauge("cache.trees.bytes", trees::bytes);
+        Metrics.gauge("cache.trees.hits", trees::hits);
+        Metrics.gauge("cache.trees.misses", trees::misses);
+        Metrics.gauge("cache.trees.evictions", trees::evictions);
+        Metrics.gauge("cache.trees.invalidations", trees::invalidations);
+        String metricsFile = System.getProperty("bacon.metrics.file");
+        if (metricsFile != null) Metrics.dumpEvery(metricsFile, Long.getLong("bacon.metrics.interval", 60));
+
+        // in server mode, share the graph between every client until the process is killed
+        if (server) {
+            try {
+                new BaconServer(g,trees,components).serve(Integer.getInteger("bacon.server.port", 4567));
+            }
+            // catch if the port can't be opened
+            catch (IOException e) {
+                System.err.println("Cannot start server.\n" + e.getMessage());
+            }
+            return;
+        }
+        // in batch mode, answer every query in the file, grouped by center, then stop
+        if (batch >= 0) {
+            try {
+                System.err.println(new BaconBatch(g,components).run(args[batch+1],args[batch+2]));
+            }
+            // catch if the query file can't be read or the result file written
+            catch (IOException e) {
+                System.err.println("Cannot run batch.\n" + e.getMessage());
+            }
+            return;
+        }
 
         // print a list of commands
         System.out.println("Commands:");
+        System.out.println("\ta: enter the name of a delta file of +movieID|actorID and -movieID|actorID rows to add or remove cast members");
         System.out.println("\tc: enter a number to list top or bottom number centers of universe by average separation");
         System.out.println("\td: enter a number followed by second number to list actors sorted by degree between those numbers");
+        System.out.println("\te: enter a number to estimate top or bottom number centers of universe from searches out of a sample of actors, with 95% confidence intervals");
         System.out.println("\ti: list actors with infinite separation from the current center");
         System.out.println("\tp: enter name to find path from that actor to the current center of the universe");
         System.out.println("\ts: enter a number followed by second number to list actors sorted by separation from the current center, with separation between those numbers");
+        System.out.println("\tstats: list the load, search and command timings and counts gathered so far");
         System.out.println("\tu: enter a name to make that actor the new center of the universe");
         System.out.println("\tq: quit game");
 
@@ -292,52 +434,91 @@ public class BaconGame {
         // as long as the user doesn't use the "q" command to quit
         while (!statement.equals("q")) {
             // if input isn't in the list of commands, reject and print an error message
-            if (!statement.equals("c") && !statement.equals("d") && !statement.equals("i") && !statement.equals("p") && !statement.equals("s") && !statement.equals("q") && !statement.equals("u")) {
+            if (!statement.equals("a") && !statement.equals("c") && !statement.equals("d") && !statement.equals("e") && !statement.equals("i") && !statement.equals("p") && !statement.equals("s") && !statement.equals("stats") && !statement.equals("q") && !statement.equals("u")) {
                 // prompt user to enter a valid command
                 System.out.println("Invalid command, try again");
                 statement = in.nextLine();
             }
+            // if input reads "a"
+            if (statement.equals("a")) {
+                // prompt user to enter a delta file
+                System.out.println("Enter name of delta file");
+                String deltaFile = in.nextLine();
+                long start = Metrics.start();
+                // apply it, then move the cached trees whose components it didn't touch onto the new graph
+                GraphDelta.Update update;
+                try {
+                    update = deltas.apply(g,deltaFile);
+                }
+                // catch anything in the delta or names files that couldn't be applied, and keep the current graph
+                catch (RuntimeException e) {
+                    System.out.println("Cannot apply delta file " + deltaFile + ".\n" + e);
+                    Metrics.time(Metrics.timer("command.a"), start);
+                    statement = in.nextLine();
+                    continue;
+                }
+                // a delta that changed nothing leaves the graph, trees and components as they are
+                if (update.after() != g) {
+                    g = update.after();
+                    trees.update(update);
+                    components = components.update(update);
+                }
+                System.out.println(update);
+                Metrics.time(Metrics.timer("command.a"), start);
+            }
             // if input reads "c"
-            if (statement.equals("c")) {
+            else if (statement.equals("c")) {
                 // prompt user to enter a number
                 System.out.println("Enter number (+ or -) to get top number best centers of the universe or bottom number worst centers of the universe");
                 // store that input as a an int
                 int number = Integer.parseInt(in.nextLine());
-                // initialize a map from actors to their average separation and a list for map entries to sort
-                HashMap<Object,Double> actorsAndSeparation = new HashMap();
-                ArrayList actorsAndSeparationList = new ArrayList();
-                // for each actor in the graph
-                for (Object actor : g.vertices()) {
-                    // find its average separation
-                    double separation = averageSeparation(bfs(g,actor),actor);
-                    // add actors and their average separation to map
-                    actorsAndSeparation.put(actor,separation);
-                }
-                // store map entries in a list so that they can be sorted by separation
-                for(Map.Entry<Object, Double> e: actorsAndSeparation.entrySet()) {
-                    actorsAndSeparationList.add(e);
-                }
-                // sort them
-                Collections.sort(actorsAndSeparationList,comparator);
-                // if the input number was positive
-                if (number > 0) {
-                    System.out.println("The best " + number + " centers of the universe based on average separation are: ");
-                    // print out the top <number> actors with smallest average separation
-                    for (int k =0; k< number; k++) {
-                        System.out.println(actorsAndSeparationList.get(k));
+                long start = Metrics.start();
+                // reject 0 before paying for a search from every actor
+                if (number == 0) System.out.println("Invalid number!");
+                else {
+                    // find every actor's average separation, searching from all of them in parallel
+                    double[] separations = new CentralityEngine(g).averageSeparations();
+                    // if the input number was positive
+                    if (number > 0) {
+                        System.out.println("The best " + number + " centers of the universe based on average separation are: ");
+                        // print out the top <number> actors with smallest average separation, kept in a bounded heap
+                        for (Map.Entry<String,Double> e : Rankings.centers(g,separations,number)) {
+                            System.out.println(e);
+                        }
+                    }
+                    // if the input number was negative
+                    else {
+                        System.out.println("The worst " + (-number) + " centers of the universe based on average separation are: ");
+                        // print out the bottom <number> actors with largest average separation, largest first
+                        for (Map.Entry<String,Double> e : Rankings.centers(g,separations,number)) {
+                            System.out.println(e);
+                        }
                     }
                 }
-                // if the input number was negative
-                else if (number < 0) {
-                    // make it positive for loop and printing purposes
-                    number = -1*number;
-                    System.out.println("The worst " + number + " centers of the universe based on average separation are: ");
-                    // print out the bottom <number> actors with largest average separation
-                    for (int k = actorsAndSeparationList.size()-1; k > actorsAndSeparationList.size()-number-1; k--) {
-                        System.out.println(actorsAndSeparationList.get(k));
+                Metrics.time(Metrics.timer("command.c"), start);
+            }
+            // if input reads "e"
+            else if (statement.equals("e")) {
+                // prompt user to enter a number, then how many actors per component to search from
+                System.out.println("Enter number (+ or -) to estimate top number best centers of the universe or bottom number worst centers of the universe");
+                int number = Integer.parseInt(in.nextLine());
+                System.out.println("Enter number of actors to search from in each group of connected actors, or 0 to keep adding " + sampleBatch + " at a time until the ranking stops changing");
+                int sources = Integer.parseInt(in.nextLine());
+                long start = Metrics.start();
+                if (number != 0 && sources >= 0) {
+                    // estimate every actor's average separation from searches out of a random sample of actors
+                    SampledCentrality estimate = new SampledCentrality(g,components);
+                    List<Map.Entry<String,Double>> centers;
+                    if (sources > 0) centers = Rankings.centers(g,estimate.sampleUpTo(sources).separations(),number);
+                    else centers = estimate.untilStable(number,sampleBatch);
+                    System.out.println("The estimated " + (number > 0 ? "best " + number : "worst " + (-number)) + " centers of the universe based on average separation, from " + estimate.pivots() + " searches, are: ");
+                    // print each estimate with its 95% confidence interval
+                    for (Map.Entry<String,Double> e : centers) {
+                        System.out.println(e + " +- " + String.format("%.4f", estimate.halfWidth(e.getKey())));
                     }
                 }
                 else System.out.println("Invalid number!");
+                Metrics.time(Metrics.timer("command.e"), start);
             }
             // if input reads "d"
             else if (statement.equals("d")) {
@@ -353,38 +534,21 @@ public class BaconGame {
                     System.out.println("Enter upper bound for separation");
                     high = Integer.parseInt(in.nextLine());
                 }
-                // initialize a map from actors to their degrees and a list for map entries to sort
-                HashMap<Object,Double> actorsAndDegree = new HashMap();
-                ArrayList actorsAndDegreeList = new ArrayList();
-                // for each actor on the graph
-                for (Object actor : g.vertices()) {
-                    // store their degree as a double
-                    double degree = g.outDegree(actor);
-                    // if it is within the bounds
-                    if (degree > low && degree < high) {
-                        // add it to the map
-                        actorsAndDegree.put(actor, degree);
-                    }
-                }
-                // store map entries in a list so that they can be sorted by degree
-                for(Map.Entry<Object, Double> e: actorsAndDegree.entrySet()) {
-                    actorsAndDegreeList.add(e);
-                }
-                // sort them
-                Collections.sort(actorsAndDegreeList,comparator);
+                long start = Metrics.start();
                 System.out.println("The actors with degrees between " + low + " and " + high + " sorted from high to low are:");
-                // while there are still entries in the list
-                while (!actorsAndDegreeList.isEmpty()) {
-                    // print each one in order from highest degree to lowest
-                    System.out.println(actorsAndDegreeList.remove(actorsAndDegreeList.size()-1));
+                // filter the actors by degree and print them in order from highest degree to lowest
+                for (Map.Entry<String,Double> e : Rankings.byDegree(g,low,high)) {
+                    System.out.println(e);
                 }
+                Metrics.time(Metrics.timer("command.d"), start);
             }
             // if input reads "i"
             else if(statement.equals("i")) {
-                // create a shortest path tree to the current center
-                Graph bfs = bfs(g,curCenter);
-                // pring the unreachable vertices
-                System.out.println("These " + (missingVertices(g,bfs)).size() + " actors are unreachable by " + curCenter +": " +missingVertices(g,bfs));
+                long start = Metrics.start();
+                // everyone outside the current center's component is unreachable, listed by name
+                Set<String> missing = components.unreachableFrom(curCenter);
+                System.out.println("These " + missing.size() + " actors are unreachable by " + curCenter +": " +missing);
+                Metrics.time(Metrics.timer("command.i"), start);
             }
             // if input reads "p"
             else if (statement.equals("p")) {
@@ -392,30 +556,29 @@ public class BaconGame {
                 System.out.println("Enter name to find path from actor to " + curCenter);
                 // store that actor
                 String person = in.nextLine();
-                // if the actor is unreachable, prompt user to try again
-                // create a shortest path tree to the current center
-                Graph bfs = bfs(g,curCenter);
                 // check if person is an actor
                 while (!g.hasVertex(person)) {
                     // if not, prompt user to try again
                     System.out.println("Can't find actor " + person + ". Please try again");
                     person = in.nextLine();
                 }
-                // check if person is reachable
-                while (!bfs.hasVertex(person)) {
+                // check if person is reachable, straight from the component index
+                while (!components.connected(person,curCenter)) {
                     // if not, prompt user to try again
                     System.out.println(person + " is unreachable. Please try again.");
                     person = in.nextLine();
                 }
-                // find the path to the center as a list
-                List path = getPath(bfs,person);
+                long start = Metrics.start();
+                // find the path to the center as a list, searching from both ends instead of the whole component
+                List<String> path = shortestPath(g,person,curCenter);
                 // find the number by subtracting 1 from the path length
                 System.out.println(person + "'s number is " + (path.size()-1));
                 // loop through the list
                 for (int k = 0; k<path.size()-1; k++) {
                     // print out each relationship in the list
-                    System.out.println(path.get(k) + " appeared in " + bfs.getLabel(path.get(k),path.get(k+1)) + " with " + path.get(k+1));
+                    System.out.println(path.get(k) + " appeared in " + g.getLabel(path.get(k),path.get(k+1)) + " with " + path.get(k+1));
                 }
+                Metrics.time(Metrics.timer("command.p"), start);
             }
             // if input reads "s"
             else if (statement.equals("s")) {
@@ -432,36 +595,15 @@ public class BaconGame {
                     System.out.println("Enter upper bound for separation");
                     high = Integer.parseInt(in.nextLine());
                 }
-                // initialize a map from actors to their separation from the center and a list for map entries to sort
-                HashMap<Object,Double> actorsAndSeparation = new HashMap();
-                ArrayList actorsAndSeparationList = new ArrayList();
-                // create a shortest path tree to the current center
-                Graph bfs = bfs(g,curCenter);
-                // for each actor in the tree
-                for (Object actor : bfs.vertices()) {
-                    // excluding the center itself
-                    if (!actor.equals(curCenter)) {
-                        // find the separation from the center
-                        double separationFromCenter = getPath(bfs,actor).size()-1;
-                        // if it is within the bounds
-                        if (separationFromCenter > low && separationFromCenter < high) {
-                            // add the actor and their separation from the center to the map
-                            actorsAndSeparation.put(actor, separationFromCenter);
-                        }
-                    }
-                }
-                // store map entries in a list so that they can be sorted by degree
-                for(Map.Entry<Object, Double> e: actorsAndSeparation.entrySet()) {
-                    actorsAndSeparationList.add(e);
-                }
-                // sort them
-                Collections.sort(actorsAndSeparationList,comparator);
+                long start = Metrics.start();
+                // get the shortest path tree to the current center
+                ShortestPathTree bfs = trees.get(curCenter);
                 System.out.println("The actors with separation from " + curCenter + " between " + low + " and " + high + " sorted from low to high are:");
-                // while there are still entries in the list
-                while (!actorsAndSeparationList.isEmpty()) {
-                    // print each one in order from lowest separation to highest
-                    System.out.println(actorsAndSeparationList.remove(0));
+                // read the actors in range straight out of the tree's distance levels, from lowest separation to highest
+                for (Map.Entry<String,Double> e : Rankings.bySeparation(bfs,low,high)) {
+                    System.out.println(e);
                 }
+                Metrics.time(Metrics.timer("command.s"), start);
             }
             // if input reads "u"
             else if (statement.equals("u")) {
@@ -475,10 +617,19 @@ public class BaconGame {
                     System.out.println("Can't find actor " + curCenter + ". Please try again");
                     curCenter = in.nextLine();
                 }
-                // make shortest path graph to that center
-                Graph bfs = bfs(g,curCenter);
-                // print the new center, the number of connected actors, and the average separation
-                System.out.println(curCenter + " is the new center of the universe, connected to " + (bfs.numVertices()-1) + "/" + g.numVertices() + " actors with average separation " + averageSeparation(bfs,curCenter));
+                long start = Metrics.start();
+                // get the shortest path tree to that center
+                ShortestPathTree bfs = trees.get(curCenter);
+                // print the new center, the number of connected actors (from the component index), and the average separation
+                System.out.println(curCenter + " is the new center of the universe, connected to " + (components.connectedCount(curCenter)-1) + "/" + g.numVertices() + " actors with average separation " + averageSeparation(bfs));
+                Metrics.time(Metrics.timer("command.u"), start);
+            }
+            // if input reads "stats"
+            else if (statement.equals("stats")) {
+                // print every timer, counter and histogram gathered so far, one per line
+                for (String line : Metrics.report()) {
+                    System.out.println(line);
+                }
             }
             // update statement to be the next line
             statement = in.nextLine();
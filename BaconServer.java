@@ -0,0 +1,312 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Serves the game's c/d/e/i/p/s/u operations to many clients at once from one loaded graph. Each request is one line
+ * with its fields separated by '|' (names contain spaces, like in the input files) and carries its own center, so
+ * the server keeps no per-user state:
+ *
+ *   c|number                  best (or for a negative number, worst) centers by average separation
+ *   d|low|high                actors with degree strictly between low and high, high to low
+ *   e|number|sources          like c, estimated from searches out of sources actors per component (0 to keep
+ *                             sampling until the ranking settles), each followed by its 95% confidence half-width
+ *   i|center                  actors unreachable from center, by name
+ *   p|actor|center            shortest path from actor to center
+ *   s|center|low|high         actors with separation from center strictly between low and high, low to high
+ *   u|center                  how many actors center is connected to, and their average separation
+ *   stats                     every metric in the Metrics registry, including latency percentiles per operation
+ *   quit                      closes the connection
+ *
+ * Each reply starts with "OK n" followed by n lines holding what the game would print, or is a single "ERR message"
+ * line. Requests on a connection are answered in order, and replies are flushed once no more requests are waiting,
+ * so a client can pipeline.
+ *
+ * The graph, component index and cached trees are shared read-only by every connection; path searches borrow their
+ * buffers from a pool holding at most bacon.server.searches sets (default one per processor), each several int
+ * arrays as long as the actor count. A p request that can't get a set within bacon.server.waitMillis (default 1000)
+ * gets "ERR busy". Likewise an s or u request whose center's tree isn't cached needs one of bacon.server.builds
+ * permits (default 2) to search for it, since each search holds a tree as big as the graph until the cache takes it,
+ * and an e request needs one of bacon.server.estimates permits (default 1) for its sampling workers; either gets
+ * "ERR busy" if none comes free in time. Ranking every actor for c searches from all of them, so it is computed once
+ * at startup if bacon.server.centers is true, and c is refused otherwise. d needs no permit: it reads degrees the graph
+ * keeps, which in bipartite mode are counted once, by the first d, while any others wait for that count.
+ *
+ * Connections run on virtual threads when the JVM has them, and otherwise on a fixed pool of bacon.server.threads
+ * platform threads (default 64); connections past that wait for a thread to come free.
+ */
+public class BaconServer {
+
+    private static final String OPERATIONS = "cdeipsu";
+    private static final int SEARCHES = Integer.getInteger("bacon.server.searches", Runtime.getRuntime().availableProcessors());
+    private static final int THREADS = Integer.getInteger("bacon.server.threads", 64);
+    private static final int BUILDS = Integer.getInteger("bacon.server.builds", 2);
+    private static final int ESTIMATES = Integer.getInteger("bacon.server.estimates", 1);
+    private static final boolean CENTERS = Boolean.getBoolean("bacon.server.centers");
+    private static final long WAIT_MILLIS = Long.getLong("bacon.server.waitMillis", 1000);
+    private static final LatencyHistogram pathTime = Metrics.timer("path.search");
+    private static final LatencyHistogram pathVisited = Metrics.histogram("path.visited");
+
+    private final IndexedActorGraph g;
+    private final ShortestPathTreeCache trees;
+    private final ComponentIndex components;
+    private final Queue<BidirectionalSearch> searches = new ConcurrentLinkedQueue<>();  // idle path search buffers
+    private final Semaphore searchPermits = new Semaphore(SEARCHES, true);             // one per set of buffers
+    private final Semaphore buildPermits = new Semaphore(BUILDS, true);                 // one per uncached tree search
+    private final Semaphore estimatePermits = new Semaphore(ESTIMATES, true);           // one per e request sampling
+    private final Map<String,LatencyHistogram> latencies = new HashMap<>();             // request.* timers by operation
+    private final double[] separations;                                                 // c's answer, or null if refused
+    private volatile ServerSocket socket;
+
+    /**
+     * Takes the loaded graph plus the tree cache and component index built over it, ranking every actor for c
+     * first if bacon.server.centers is true
+     */
+    public BaconServer(IndexedActorGraph g, ShortestPathTreeCache trees, ComponentIndex components) {
+        this.g = g;
+        this.trees = trees;
+        this.components = components;
+        this.separations = CENTERS ? new CentralityEngine(g).averageSeparations() : null;
+        for (char op : OPERATIONS.toCharArray()) latencies.put(String.valueOf(op), Metrics.timer("request." + op));
+    }
+
+    /**
+     * Listens on a loopback port and serves connections until stop is called
+     */
+    public void serve(int port) throws IOException {
+        ExecutorService connections = newConnectionExecutor();
+        try (ServerSocket server = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress())) {
+            socket = server;
+            System.err.println("Serving " + g + " on " + server.getLocalSocketAddress());
+            while (!server.isClosed()) {
+                Socket client;
+                try {
+                    client = server.accept();
+                }
+                // stop closes the socket out from under accept
+                catch (IOException e) {
+                    if (server.isClosed()) break;
+                    throw e;
+                }
+                connections.execute(() -> converse(client));
+            }
+        }
+        finally {
+            connections.shutdown();
+        }
+    }
+
+    /**
+     * Returns the port being listened on, or -1 before serve has bound it
+     */
+    public int port() {
+        ServerSocket server = socket;
+        return server == null ? -1 : server.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections; ones already open finish their current request
+     */
+    public void stop() throws IOException {
+        ServerSocket server = socket;
+        if (server != null) server.close();
+    }
+
+    /**
+     * Returns an executor that runs each task on a new virtual thread if this JVM has them (Java 21 on), otherwise
+     * one backed by a fixed pool of bacon.server.threads daemon platform threads
+     */
+    static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        // no virtual threads here, so fall back to platform threads
+        catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(THREADS, task -> {
+                Thread thread = new Thread(task, "bacon-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Answers one connection's requests in order until the client quits or hangs up
+     */
+    private void converse(Socket client) {
+        try (Socket s = client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            String request;
+            while ((request = in.readLine()) != null && !request.trim().equals("quit")) {
+                for (String line : handle(request)) {
+                    out.write(line);
+                    out.write('\n');
+                }
+                // hold replies back while the client has more requests queued up
+                if (!in.ready()) out.flush();
+            }
+            out.flush();
+        }
+        // if the client goes away mid-reply, there's no one left to tell
+        catch (IOException e) {
+            System.err.println("Connection closed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Takes one request line and returns the reply lines, timing the operation
+     */
+    public List<String> handle(String request) {
+        String[] fields = request.split("\\|", -1);
+        String op = fields[0].trim();
+        if (op.equals("stats")) return reply(Metrics.report());
+        LatencyHistogram latency = latencies.get(op);
+        if (latency == null) return error("Invalid command " + op);
+        long start = Metrics.start();
+        try {
+            return answer(op, fields);
+        }
+        catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return error("Bad request " + request);
+        }
+        finally {
+            Metrics.time(latency, start);
+        }
+    }
+
+    private List<String> answer(String op, String[] fields) {
+        List<String> lines = new ArrayList<>();
+        if (op.equals("c")) {
+            int number = Integer.parseInt(fields[1].trim());
+            if (number == 0) return error("Invalid number!");
+            if (separations == null) return error("c is off; start the server with bacon.server.centers=true or use e");
+            for (Map.Entry<String,Double> e : Rankings.centers(g, separations, number)) lines.add(e.toString());
+        }
+        else if (op.equals("d")) {
+            int low = Integer.parseInt(fields[1].trim()), high = Integer.parseInt(fields[2].trim());
+            if (low > high) return error("Lower bound cannot be above upper bound");
+            for (Map.Entry<String,Double> e : Rankings.byDegree(g, low, high)) lines.add(e.toString());
+        }
+        else if (op.equals("e")) {
+            int number = Integer.parseInt(fields[1].trim()), sources = Integer.parseInt(fields[2].trim());
+            if (number == 0 || sources < 0) return error("Invalid number!");
+            if (!acquire(estimatePermits)) return error("busy");
+            try {
+                SampledCentrality estimate = new SampledCentrality(g, components);
+                List<Map.Entry<String,Double>> centers;
+                if (sources > 0) centers = Rankings.centers(g, estimate.sampleUpTo(sources).separations(), number);
+                else centers = estimate.untilStable(number, BaconGame.sampleBatch);
+                for (Map.Entry<String,Double> e : centers) {
+                    lines.add(e + " +- " + String.format("%.4f", estimate.halfWidth(e.getKey())));
+                }
+            }
+            finally {
+                estimatePermits.release();
+            }
+        }
+        else if (op.equals("i")) {
+            String center = fields[1];
+            if (!g.hasVertex(center)) return error("Can't find actor " + center);
+            lines.addAll(components.unreachableFrom(center));
+        }
+        else if (op.equals("p")) {
+            String person = fields[1], center = fields[2];
+            if (!g.hasVertex(person)) return error("Can't find actor " + person);
+            if (!g.hasVertex(center)) return error("Can't find actor " + center);
+            if (!components.connected(person, center)) return error(person + " is unreachable");
+            List<String> path = path(person, center);
+            if (path == null) return error("busy");
+            lines.add(person + "'s number is " + (path.size()-1));
+            for (int k = 0; k < path.size()-1; k++) {
+                lines.add(path.get(k) + " appeared in " + g.getLabel(path.get(k), path.get(k+1)) + " with " + path.get(k+1));
+            }
+        }
+        else if (op.equals("s")) {
+            String center = fields[1];
+            int low = Integer.parseInt(fields[2].trim()), high = Integer.parseInt(fields[3].trim());
+            if (!g.hasVertex(center)) return error("Can't find actor " + center);
+            if (low > high) return error("Lower bound cannot be above upper bound");
+            ShortestPathTree tree = tree(center);
+            if (tree == null) return error("busy");
+            for (Map.Entry<String,Double> e : Rankings.bySeparation(tree, low, high)) lines.add(e.toString());
+        }
+        else {
+            String center = fields[1];
+            if (!g.hasVertex(center)) return error("Can't find actor " + center);
+            ShortestPathTree tree = tree(center);
+            if (tree == null) return error("busy");
+            lines.add(center + " is connected to " + (components.connectedCount(center)-1) + "/" + g.numVertices()
+                    + " actors with average separation " + BaconGame.averageSeparation(tree));
+        }
+        lines.add(0, "OK " + lines.size());
+        return lines;
+    }
+
+    /**
+     * Finds a path with search buffers borrowed from the pool, making a new set only while fewer than
+     * bacon.server.searches exist; returns null if none came free within bacon.server.waitMillis
+     */
+    private List<String> path(String from, String to) {
+        if (!acquire(searchPermits)) return null;
+        // holding a permit means a set is idle or there's still room to make one
+        BidirectionalSearch search = searches.poll();
+        if (search == null) search = new BidirectionalSearch(g);
+        try {
+            long start = Metrics.start();
+            List<String> path = search.path(from, to);
+            if (Metrics.ENABLED) {
+                Metrics.time(pathTime, start);
+                pathVisited.record(search.lastVisited());
+            }
+            return path;
+        }
+        finally {
+            searches.offer(search);
+            searchPermits.release();
+        }
+    }
+
+    /**
+     * Returns the tree rooted at center from the cache, searching for it only with one of bacon.server.builds permits;
+     * returns null if it isn't cached and none came free within bacon.server.waitMillis
+     */
+    private ShortestPathTree tree(String center) {
+        ShortestPathTree tree = trees.cached(center);
+        if (tree != null || !acquire(buildPermits)) return tree;
+        try {
+            return trees.get(center);
+        }
+        finally {
+            buildPermits.release();
+        }
+    }
+
+    /**
+     * Waits up to bacon.server.waitMillis for a permit, returning whether one was taken
+     */
+    private static boolean acquire(Semaphore permits) {
+        try {
+            return permits.tryAcquire(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static List<String> reply(List<String> lines) {
+        List<String> reply = new ArrayList<>(lines.size()+1);
+        reply.add("OK " + lines.size());
+        reply.addAll(lines);
+        return reply;
+    }
+
+    private static List<String> error(String message) {
+        return Collections.singletonList("ERR " + message);
+    }
+}
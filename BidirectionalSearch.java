@@ -0,0 +1,154 @@
+import java.util.*;
+
+/**
+ * Finds the shortest path between one pair of actors by searching outward from both ends at once, always expanding
+ * whichever side has the smaller frontier, and stopping at the first layer where the two searches meet. On a
+ * small-world actor graph both searches stay a few hops deep, so a query touches a tiny fraction of the actors a
+ * full bfs from either end would.
+ *
+ * A search keeps its state in arrays that are reused from one query to the next and reset in time proportional to
+ * what the previous query touched, so an instance must not be shared between threads.
+ */
+public class BidirectionalSearch {
+
+    private final IndexedActorGraph g;
+    private final Side forward, backward;     // searches from the first and second actor of a query
+    private int visited = 0;                  // actors reached by the last query, both sides together
+
+    /**
+     * Takes a graph and allocates the buffers for searching it
+     */
+    public BidirectionalSearch(IndexedActorGraph g) {
+        this.g = g;
+        this.forward = new Side();
+        this.backward = new Side();
+    }
+
+    /**
+     * Returns the graph this search runs over
+     */
+    public IndexedActorGraph graph() {
+        return g;
+    }
+
+    /**
+     * Returns how many actors the last query reached, counting both sides
+     */
+    public int lastVisited() {
+        return visited;
+    }
+
+    /**
+     * Takes two actors and finds a shortest path from the first to the second as a list of names, the same shape
+     * getPath returns from a tree rooted at the second actor; returns an empty list if either actor isn't in the
+     * graph or they aren't connected
+     */
+    public List<String> path(String from, String to) {
+        List<String> path = new ArrayList<>();
+        int a = g.idOf(from), b = g.idOf(to);
+        forward.reset();
+        backward.reset();
+        visited = 0;
+        if (a < 0 || b < 0) return path;
+
+        forward.start(a);
+        backward.start(b);
+        int meet = a == b ? a : -1;
+        // grow one side a whole layer at a time, smaller frontier first, until the two sides touch
+        while (meet < 0 && forward.hasFrontier() && backward.hasFrontier()) {
+            if (forward.frontierSize() <= backward.frontierSize()) meet = forward.expandLayer(backward);
+            else meet = backward.expandLayer(forward);
+        }
+        visited = forward.tail + backward.tail;
+        if (meet < 0) return path;
+
+        // walk from the meeting point back to the first actor, then forward to the second
+        for (int v = meet; v >= 0; v = forward.parent[v]) path.add(g.nameOf(v));
+        Collections.reverse(path);
+        for (int v = backward.parent[meet]; v >= 0; v = backward.parent[v]) path.add(g.nameOf(v));
+        return path;
+    }
+
+    /**
+     * One direction of the search: its own distance, parent and queue arrays, like BFSKernel's
+     */
+    private class Side {
+        final int[] dist, parent, queue;
+        final boolean[] movieSeen;
+        int head = 0, tail = 0;
+
+        Side() {
+            int n = g.numVertices();
+            dist = new int[n];
+            Arrays.fill(dist, -1);
+            parent = new int[n];
+            queue = new int[n];
+            movieSeen = g instanceof BipartiteActorGraph ? new boolean[g.numMovies()] : null;
+        }
+
+        void reset() {
+            BFSKernel.clear(g, tail, dist, queue, movieSeen);
+            head = tail = 0;
+        }
+
+        void start(int source) {
+            dist[source] = 0;
+            parent[source] = -1;
+            queue[tail++] = source;
+        }
+
+        boolean hasFrontier() {
+            return head < tail;
+        }
+
+        int frontierSize() {
+            return tail - head;
+        }
+
+        /**
+         * Expands every actor in the current frontier and returns the actor where this side met the other one on the
+         * shortest combined path, or -1 if they haven't met; the whole layer is finished first so the best meeting
+         * point in it is found, not just the first
+         */
+        int expandLayer(Side other) {
+            int layerEnd = tail;
+            int meet = -1, best = Integer.MAX_VALUE;
+            while (head < layerEnd) {
+                int v = queue[head++];
+                int firstNew = tail;
+                if (g instanceof CompactActorGraph) expandCoStars((CompactActorGraph) g, v);
+                else expandMovies((BipartiteActorGraph) g, v);
+                // any newly reached actor the other side already reached closes a path
+                for (int k = firstNew; k < tail; k++) {
+                    int w = queue[k];
+                    if (other.dist[w] >= 0 && dist[w] + other.dist[w] < best) {
+                        best = dist[w] + other.dist[w];
+                        meet = w;
+                    }
+                }
+            }
+            return meet;
+        }
+
+        private void expandCoStars(CompactActorGraph c, int v) {
+            for (int e = c.edgeStart(v); e < c.edgeEnd(v); e++) reach(c.neighborAt(e), v);
+        }
+
+        private void expandMovies(BipartiteActorGraph b, int v) {
+            for (int k = b.movieStart(v); k < b.movieEnd(v); k++) {
+                int m = b.movieAt(k);
+                if (movieSeen[m]) continue;
+                movieSeen[m] = true;
+                for (int c = b.castStart(m); c < b.castEnd(m); c++) reach(b.castAt(c), v);
+            }
+        }
+
+        private void reach(int w, int from) {
+            if (dist[w] < 0) {
+                dist[w] = dist[from]+1;
+                parent[w] = from;
+                queue[tail++] = w;
+            }
+        }
+    }
+}
@@ -0,0 +1,522 @@
+import java.util.*;
+
+/**
+ * Actor-movie graph that stores only who appeared in what: actor nodes link to the movie nodes they appeared in and
+ * movie nodes link back to their cast, both as CSR int arrays. Memory grows with the total cast size rather than its
+ * square. The Graph interface is a lazily materialized co-star view on top of that: neighbors and shared-movie labels
+ * are computed on demand, so the game commands still see actors as vertices and sets of common movies as edges.
+ *
+ * A search over the bipartite graph (see BFSKernel) takes actor -> movie -> actor hops and expands each movie once,
+ * so an actor's separation is its hop count divided by two.
+ *
+ * A graph relabeled into a VertexOrder remembers each actor's original ID (the one the loader gave), which co-star
+ * rows and component member lists are sorted by, so those orders don't change with the numbering.
+ */
+public class BipartiteActorGraph implements IndexedActorGraph {
+
+    private final String[] actorNames;               // actor ID -> actor name
+    private final Map<String,Integer> actorIDs;      // actor name -> actor ID
+    private final String[] movieNames;               // movie ID -> movie name
+    private final int[] movieOffsets;                // actor ID -> first slot in actorMovies
+    private final int[] actorMovies;                 // movie IDs each actor appeared in, ascending per actor
+    private final int[] castOffsets;                 // movie ID -> first slot in castActors
+    private final int[] castActors;                  // actor IDs in each movie's cast
+    private volatile int coStarEdges = -1;           // directed co-star edge count, computed on first request
+    private volatile int[] degrees;                  // actor ID -> number of co-stars, counted on first request
+    private volatile Map<String,Integer> movieIDs;   // movie name -> movie ID, built on first request
+    private final int[] originalIDs;                 // actor ID -> ID before relabeling; null if never relabeled
+    private final int[] relabeledIDs;                // the reverse, original ID -> actor ID
+
+    BipartiteActorGraph(String[] actorNames, Map<String,Integer> actorIDs, String[] movieNames,
+                        int[] movieOffsets, int[] actorMovies, int[] castOffsets, int[] castActors) {
+        this(actorNames, actorIDs, movieNames, movieOffsets, actorMovies, castOffsets, castActors, null);
+    }
+
+    /**
+     * Also takes the movie name -> ID table if one is already built, so a graph derived from another (see GraphDelta)
+     * doesn't have to build it again
+     */
+    BipartiteActorGraph(String[] actorNames, Map<String,Integer> actorIDs, String[] movieNames,
+                        int[] movieOffsets, int[] actorMovies, int[] castOffsets, int[] castActors,
+                        Map<String,Integer> movieIDs) {
+        this(actorNames, actorIDs, movieNames, movieOffsets, actorMovies, castOffsets, castActors, movieIDs, null);
+    }
+
+    /**
+     * Also takes each actor's original ID, for a graph that has been relabeled (see relabel); null if it hasn't
+     */
+    BipartiteActorGraph(String[] actorNames, Map<String,Integer> actorIDs, String[] movieNames,
+                        int[] movieOffsets, int[] actorMovies, int[] castOffsets, int[] castActors,
+                        Map<String,Integer> movieIDs, int[] originalIDs) {
+        this.movieIDs = movieIDs;
+        this.originalIDs = originalIDs;
+        if (originalIDs == null) relabeledIDs = null;
+        else {
+            relabeledIDs = new int[originalIDs.length];
+            for (int id = 0; id < originalIDs.length; id++) relabeledIDs[originalIDs[id]] = id;
+        }
+        this.actorNames = actorNames;
+        this.actorIDs = actorIDs;
+        this.movieNames = movieNames;
+        this.movieOffsets = movieOffsets;
+        this.actorMovies = actorMovies;
+        this.castOffsets = castOffsets;
+        this.castActors = castActors;
+    }
+
+    /**
+     * Takes a map from movie names to the actors that appear in them (as produced by BaconGame.mapMoviesToActors)
+     * and builds the bipartite graph, giving movies and actors dense IDs in order of first appearance
+     */
+    public static BipartiteActorGraph fromMoviesToActors(Map<String,Set<String>> moviesToActors) {
+        String[] movieNames = new String[moviesToActors.size()];
+        Map<String,Integer> actorIDs = new HashMap<>();
+        List<String> actorList = new ArrayList<>();
+        int[] castOffsets = new int[moviesToActors.size()+1];
+        int castSize = 0;
+        for (Set<String> cast : moviesToActors.values()) castSize += cast.size();
+        int[] castActors = new int[castSize];
+
+        // lay out each movie's cast as a slice of actor IDs
+        int movie = 0, slot = 0;
+        for (Map.Entry<String,Set<String>> entry : moviesToActors.entrySet()) {
+            movieNames[movie] = entry.getKey();
+            castOffsets[movie] = slot;
+            for (String actor : entry.getValue()) {
+                Integer id = actorIDs.get(actor);
+                // first time we've seen this actor, so give them the next ID
+                if (id == null) {
+                    id = actorList.size();
+                    actorIDs.put(actor, id);
+                    actorList.add(actor);
+                }
+                castActors[slot++] = id;
+            }
+            movie++;
+        }
+        castOffsets[movie] = slot;
+        return fromCasts(actorList.toArray(new String[0]), actorIDs, movieNames, castOffsets, castActors);
+    }
+
+    /**
+     * Takes actor and movie name tables plus each movie's cast as a CSR slice of actor IDs, and inverts the casts
+     * so each actor also has a slice of the movies they appeared in
+     */
+    static BipartiteActorGraph fromCasts(String[] actorNames, Map<String,Integer> actorIDs, String[] movieNames,
+                                         int[] castOffsets, int[] castActors) {
+        int n = actorNames.length;
+        int castSize = castOffsets[movieNames.length];
+        // count each actor's movies, then turn the counts into offsets
+        int[] movieOffsets = new int[n+1];
+        for (int k = 0; k < castSize; k++) movieOffsets[castActors[k]+1]++;
+        for (int a = 0; a < n; a++) movieOffsets[a+1] += movieOffsets[a];
+        // walking movies in ID order leaves each actor's slice sorted
+        int[] actorMovies = new int[castSize];
+        int[] fill = Arrays.copyOf(movieOffsets, n);
+        for (int m = 0; m < movieNames.length; m++) {
+            for (int k = castOffsets[m]; k < castOffsets[m+1]; k++) {
+                actorMovies[fill[castActors[k]]++] = m;
+            }
+        }
+        return new BipartiteActorGraph(actorNames, actorIDs, movieNames, movieOffsets, actorMovies, castOffsets, castActors);
+    }
+
+    /**
+     * Takes a permutation of the actor IDs (order[newID] = oldID, see VertexOrder) and returns the same graph with
+     * each actor renumbered to their place in it; movie IDs, each actor's movies, the order of each cast and each
+     * actor's original ID stay put
+     */
+    BipartiteActorGraph relabel(int[] order) {
+        int n = actorNames.length;
+        if (order.length != n) throw new IllegalArgumentException("order has " + order.length + " actors, not " + n);
+        int[] newID = new int[n];
+        Arrays.fill(newID, -1);
+        for (int id = 0; id < n; id++) {
+            if (newID[order[id]] >= 0) throw new IllegalArgumentException("order repeats actor " + order[id]);
+            newID[order[id]] = id;
+        }
+        String[] names = new String[n];
+        Map<String,Integer> ids = new HashMap<>(n * 4 / 3 + 1);
+        int[] offsets = new int[n+1];
+        int[] movies = new int[actorMovies.length];
+        // move each actor's name and slice of movies to their new place
+        for (int id = 0; id < n; id++) {
+            int old = order[id];
+            names[id] = actorNames[old];
+            ids.put(names[id], id);
+            int length = movieOffsets[old+1] - movieOffsets[old];
+            System.arraycopy(actorMovies, movieOffsets[old], movies, offsets[id], length);
+            offsets[id+1] = offsets[id] + length;
+        }
+        int[] cast = new int[castActors.length];
+        for (int k = 0; k < cast.length; k++) cast[k] = newID[castActors[k]];
+        int[] originals = new int[n];
+        for (int id = 0; id < n; id++) originals[id] = originalID(order[id]);
+        return new BipartiteActorGraph(names, ids, movieNames, offsets, movies, castOffsets, cast, movieIDs, originals);
+    }
+
+    /**
+     * Returns the ID the loader gave an actor, before any relabeling
+     */
+    public int originalID(int id) {
+        return originalIDs == null ? id : originalIDs[id];
+    }
+
+    /**
+     * Returns the ID of the actor the loader gave the given original ID
+     */
+    public int idOfOriginal(int original) {
+        return relabeledIDs == null ? original : relabeledIDs[original];
+    }
+
+    /**
+     * Returns actor ID -> original ID, or null if the graph was never relabeled
+     */
+    int[] originalIDArray() {
+        return originalIDs;
+    }
+
+    /**
+     * Returns the int ID of an actor, or -1 if they aren't in the graph
+     */
+    public int idOf(String actor) {
+        Integer id = actorIDs.get(actor);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the name of the actor with the given ID
+     */
+    public String nameOf(int id) {
+        return actorNames[id];
+    }
+
+    /**
+     * Returns the name of the movie with the given ID
+     */
+    public String movieName(int movie) {
+        return movieNames[movie];
+    }
+
+    /**
+     * Returns the int ID of a movie, or -1 if it isn't in the graph
+     */
+    public int movieIdOf(String movie) {
+        Integer id = movieIDTable().get(movie);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the number of movie nodes
+     */
+    public int numMovies() {
+        return movieNames.length;
+    }
+
+    /**
+     * Returns the first slot of an actor's movies; they run up to movieEnd(id) and are read with movieAt
+     */
+    public int movieStart(int id) {
+        return movieOffsets[id];
+    }
+
+    public int movieEnd(int id) {
+        return movieOffsets[id+1];
+    }
+
+    public int movieAt(int slot) {
+        return actorMovies[slot];
+    }
+
+    /**
+     * Returns the first slot of a movie's cast; it runs up to castEnd(movie) and is read with castAt
+     */
+    public int castStart(int movie) {
+        return castOffsets[movie];
+    }
+
+    public int castEnd(int movie) {
+        return castOffsets[movie+1];
+    }
+
+    public int castAt(int slot) {
+        return castActors[slot];
+    }
+
+    // name tables, shared with graphs derived from this one so IDs stay the same
+    String[] actorNameTable() {
+        return actorNames;
+    }
+
+    Map<String,Integer> actorIDTable() {
+        return actorIDs;
+    }
+
+    String[] movieNameTable() {
+        return movieNames;
+    }
+
+    Map<String,Integer> movieIDTable() {
+        Map<String,Integer> table = movieIDs;
+        // only incremental updates look movies up by name, so the table is built the first time one does
+        if (table == null) {
+            table = new HashMap<>(movieNames.length * 4 / 3 + 1);
+            for (int m = 0; m < movieNames.length; m++) table.put(movieNames[m], m);
+            movieIDs = table;
+        }
+        return table;
+    }
+
+    // raw CSR arrays, for writing snapshots
+    int[] movieOffsetArray() {
+        return movieOffsets;
+    }
+
+    int[] actorMovieArray() {
+        return actorMovies;
+    }
+
+    int[] castOffsetArray() {
+        return castOffsets;
+    }
+
+    int[] castActorArray() {
+        return castActors;
+    }
+
+    /**
+     * Returns the sorted, distinct IDs of every actor who shared at least one movie with actor a
+     */
+    public int[] coStars(int a) {
+        int count = 0;
+        for (int k = movieOffsets[a]; k < movieOffsets[a+1]; k++) {
+            int m = actorMovies[k];
+            count += castOffsets[m+1] - castOffsets[m];
+        }
+        int[] found = new int[count];
+        count = 0;
+        // gather everyone from every movie, then sort and drop duplicates and the actor themself
+        for (int k = movieOffsets[a]; k < movieOffsets[a+1]; k++) {
+            int m = actorMovies[k];
+            for (int c = castOffsets[m]; c < castOffsets[m+1]; c++) {
+                found[count++] = castActors[c];
+            }
+        }
+        Arrays.sort(found, 0, count);
+        int distinct = 0;
+        for (int k = 0; k < count; k++) {
+            if (found[k] != a && (distinct == 0 || found[distinct-1] != found[k])) found[distinct++] = found[k];
+        }
+        return Arrays.copyOf(found, distinct);
+    }
+
+    /**
+     * Returns the IDs of the movies actors a and b appeared in together, ascending, by merging their sorted movie slices
+     */
+    public int[] sharedMovies(int a, int b) {
+        int i = movieOffsets[a], iEnd = movieOffsets[a+1];
+        int j = movieOffsets[b], jEnd = movieOffsets[b+1];
+        int[] shared = new int[Math.min(iEnd-i, jEnd-j)];
+        int count = 0;
+        while (i < iEnd && j < jEnd) {
+            if (actorMovies[i] < actorMovies[j]) i++;
+            else if (actorMovies[i] > actorMovies[j]) j++;
+            else {
+                shared[count++] = actorMovies[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(shared, count);
+    }
+
+    /**
+     * Returns the ID of a vertex, throwing if it isn't in the graph (matching AdjacencyMapGraph's failure on unknown
+     * vertices)
+     */
+    private int requireID(String actor) {
+        Integer id = actorIDs.get(actor);
+        if (id == null) throw new IllegalArgumentException("No such actor: " + actor);
+        return id;
+    }
+
+    public int numVertices() {
+        return actorNames.length;
+    }
+
+    /**
+     * Returns the number of directed co-star edges, or Integer.MAX_VALUE if there are more than that
+     */
+    public int numEdges() {
+        // counting co-star edges means walking every actor's casts, so it's done once, along with the degrees
+        if (coStarEdges < 0) {
+            long total = 0;
+            for (int degree : degrees()) total += degree;
+            coStarEdges = (int) Math.min(total, Integer.MAX_VALUE);
+        }
+        return coStarEdges;
+    }
+
+    public int degree(int id) {
+        return degrees()[id];
+    }
+
+    /**
+     * Returns every actor's number of co-stars, counting them all the first time it's called; concurrent first callers
+     * wait for one count rather than each walking every cast
+     */
+    private int[] degrees() {
+        int[] counted = degrees;
+        if (counted != null) return counted;
+        synchronized (this) {
+            if (degrees == null) {
+                counted = new int[actorNames.length];
+                int[] seenBy = new int[actorNames.length];
+                for (int a = 0; a < actorNames.length; a++) counted[a] = countCoStars(a, seenBy);
+                degrees = counted;
+            }
+            return degrees;
+        }
+    }
+
+    /**
+     * Returns how many distinct co-stars an actor has without gathering them, marking each one found in seenBy with
+     * the actor's ID + 1; seenBy is shared from one actor to the next and must hold no such mark beforehand
+     */
+    private int countCoStars(int a, int[] seenBy) {
+        int count = 0;
+        seenBy[a] = a+1;
+        for (int k = movieOffsets[a]; k < movieOffsets[a+1]; k++) {
+            int m = actorMovies[k];
+            for (int c = castOffsets[m]; c < castOffsets[m+1]; c++) {
+                int b = castActors[c];
+                if (seenBy[b] != a+1) {
+                    seenBy[b] = a+1;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public Iterable<String> vertices() {
+        if (relabeledIDs == null) return Collections.unmodifiableList(Arrays.asList(actorNames));
+        // in the loader's order, like an unrelabeled graph
+        return new AbstractList<String>() {
+            public String get(int original) {
+                return actorNames[relabeledIDs[original]];
+            }
+            public int size() {
+                return actorNames.length;
+            }
+        };
+    }
+
+    public boolean hasVertex(String v) {
+        return actorIDs.containsKey(v);
+    }
+
+    public boolean hasEdge(String u, String v) {
+        Integer a = actorIDs.get(u), b = actorIDs.get(v);
+        return a != null && b != null && !a.equals(b) && sharedMovies(a, b).length > 0;
+    }
+
+    public Set<String> getLabel(String u, String v) {
+        return hasEdge(u, v) ? new SharedMovieSet(actorIDs.get(u), actorIDs.get(v)) : null;
+    }
+
+    public int outDegree(String v) {
+        return degree(requireID(v));
+    }
+
+    public int inDegree(String v) {
+        // every co-star edge is undirected, so in and out degree agree
+        return outDegree(v);
+    }
+
+    public Iterable<String> outNeighbors(String v) {
+        final int[] ids = coStars(requireID(v));
+        return new Iterable<String>() {
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    int k = 0;
+                    public boolean hasNext() {
+                        return k < ids.length;
+                    }
+                    public String next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        return actorNames[ids[k++]];
+                    }
+                };
+            }
+        };
+    }
+
+    public Iterable<String> inNeighbors(String v) {
+        return outNeighbors(v);
+    }
+
+    public void insertVertex(String v) {
+        throw new UnsupportedOperationException("BipartiteActorGraph is immutable");
+    }
+
+    public void insertDirected(String u, String v, Set<String> e) {
+        throw new UnsupportedOperationException("BipartiteActorGraph is immutable");
+    }
+
+    public void insertUndirected(String u, String v, Set<String> e) {
+        throw new UnsupportedOperationException("BipartiteActorGraph is immutable");
+    }
+
+    public void removeVertex(String v) {
+        throw new UnsupportedOperationException("BipartiteActorGraph is immutable");
+    }
+
+    public void removeDirected(String u, String v) {
+        throw new UnsupportedOperationException("BipartiteActorGraph is immutable");
+    }
+
+    public void removeUndirected(String u, String v) {
+        throw new UnsupportedOperationException("BipartiteActorGraph is immutable");
+    }
+
+    public String toString() {
+        return "BipartiteActorGraph: " + numVertices() + " actors, " + numMovies() + " movies, " + actorMovies.length + " appearances";
+    }
+
+    /**
+     * Read-only set of the movies two actors share, computed the first time it is read
+     */
+    private class SharedMovieSet extends AbstractSet<String> {
+        private final int a, b;
+        private int[] movies;
+
+        SharedMovieSet(int a, int b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        private int[] movies() {
+            if (movies == null) movies = sharedMovies(a, b);
+            return movies;
+        }
+
+        public int size() {
+            return movies().length;
+        }
+
+        public Iterator<String> iterator() {
+            final int[] ids = movies();
+            return new Iterator<String>() {
+                int k = 0;
+                public boolean hasNext() {
+                    return k < ids.length;
+                }
+                public String next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    return movieNames[ids[k++]];
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes every actor's average separation at once by running a breadth-first search from each actor in parallel.
+ * Each worker thread owns its own BFSKernel buffers and reuses them for every source it handles, and only
+ * the per-source total separation and reached count are kept, so no path trees are built. The results match what
+ * BaconGame.averageSeparation(bfs(g, actor), actor) returns for each actor.
+ *
+ * Works on CompactActorGraph (co-star hops) and BipartiteActorGraph (actor -> movie -> actor hops).
+ */
+public class CentralityEngine {
+
+    // number of sources a worker claims at a time; small enough to balance uneven components, big enough to keep
+    // contention on the shared counter negligible
+    private static final int CHUNK = 64;
+
+    private final IndexedActorGraph g;
+    private final int parallelism;
+
+    /**
+     * Takes a graph and the number of worker threads to search it with
+     */
+    public CentralityEngine(IndexedActorGraph g, int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        this.g = g;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Takes a graph and uses one worker per available processor, or the bacon.threads system property if it is set
+     */
+    public CentralityEngine(IndexedActorGraph g) {
+        this(g, Integer.getInteger("bacon.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Returns every actor's average separation, indexed by actor ID
+     */
+    public double[] averageSeparations() {
+        long start = Metrics.start();
+        int n = g.numVertices();
+        double[] separations = new double[n];
+        AtomicInteger next = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // start one worker per thread; each keeps claiming chunks of sources until none are left
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < parallelism; t++) {
+                tasks.add(pool.submit(new Worker(n, next, separations)));
+            }
+            for (ForkJoinTask<?> task : tasks) task.join();
+        }
+        finally {
+            pool.shutdown();
+        }
+        Metrics.time(Metrics.timer("centrality.allSources"), start);
+        return separations;
+    }
+
+    /**
+     * Searches from a run of sources using BFSKernel buffers that are allocated once and reused for every source
+     */
+    private class Worker implements Runnable {
+        private final int n;
+        private final AtomicInteger next;
+        private final double[] separations;
+        private final int[] dist, parent, queue;
+        private final boolean[] movieSeen;
+        private final long[] frontier;
+
+        Worker(int n, AtomicInteger next, double[] separations) {
+            this.n = n;
+            this.next = next;
+            this.separations = separations;
+            this.dist = new int[n];
+            Arrays.fill(dist, -1);
+            this.parent = new int[n];
+            this.queue = new int[n];
+            this.movieSeen = g instanceof BipartiteActorGraph ? new boolean[g.numMovies()] : null;
+            this.frontier = BFSKernel.frontierBuffer(g);
+        }
+
+        public void run() {
+            int start;
+            while ((start = next.getAndAdd(CHUNK)) < n) {
+                for (int source = start; source < Math.min(start+CHUNK, n); source++) {
+                    separations[source] = search(source);
+                }
+            }
+        }
+
+        /**
+         * Searches outward from one source and averages the distances of everyone it reached
+         */
+        private double search(int source) {
+            int reached = BFSKernel.search(g, source, dist, parent, queue, movieSeen, frontier);
+            long total = 0;
+            for (int k = 1; k < reached; k++) total += dist[queue[k]];
+            BFSKernel.clear(g, reached, dist, queue, movieSeen);
+            // don't include the source itself, and avoid dividing by 0
+            int vertices = reached-1;
+            if (vertices != 0) return 1.0 * total / vertices;
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+import java.util.*;
+
+/**
+ * Immutable actor graph that stores co-star adjacency in compressed-sparse-row (CSR) primitive arrays instead of
+ * maps of maps. Actors are mapped to dense int IDs, each actor's neighbors sit in one slice of a shared int array,
+ * sorted by original ID (which is the ID itself unless the graph was relabeled, see VertexOrder), and the movies
+ * behind each edge are kept once per pair of co-stars in a MovieLabelStore. Implements the Graph interface so bfs,
+ * getPath and the game commands run on it unchanged; mutators throw.
+ */
+public class CompactActorGraph implements IndexedActorGraph {
+
+    private final BipartiteActorGraph casts;         // who appeared in what; the co-star edges are derived from it
+    private final String[] actorNames;               // actor ID -> actor name
+    private final Map<String,Integer> actorIDs;      // actor name -> actor ID
+    private final String[] movieNames;               // movie ID -> movie name
+    private final int[] offsets;                     // actor ID -> first edge index; offsets[n] is the edge count
+    private final int[] neighbors;                   // edge index -> neighbor actor ID, by original ID within each actor
+    private final MovieLabelStore labels;            // edge index -> movies shared by the two actors
+
+    CompactActorGraph(BipartiteActorGraph casts, int[] offsets, int[] neighbors, MovieLabelStore labels) {
+        this.casts = casts;
+        this.actorNames = casts.actorNameTable();
+        this.actorIDs = casts.actorIDTable();
+        this.movieNames = casts.movieNameTable();
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.labels = labels;
+    }
+
+    /**
+     * Takes a map from movie names to the actors that appear in them (as produced by BaconGame.mapMoviesToActors)
+     * and builds a compact graph with actors as vertices and sets of common movies as edges
+     */
+    public static CompactActorGraph fromMoviesToActors(Map<String,Set<String>> moviesToActors) {
+        return fromBipartite(BipartiteActorGraph.fromMoviesToActors(moviesToActors));
+    }
+
+    /**
+     * Takes a bipartite actor-movie graph and materializes its co-star edges, keeping the same actor and movie IDs
+     */
+    public static CompactActorGraph fromBipartite(BipartiteActorGraph casts) {
+        long start = Metrics.start();
+        int n = casts.numVertices();
+        int appearances = n == 0 ? 0 : casts.movieEnd(n-1);
+
+        // build each actor's row from their (co-star, movie) pairs, collapsing runs with the same co-star
+        int[] offsets = new int[n+1];
+        int[] neighbors = new int[Math.max(16, appearances)];
+        int[] words = new int[neighbors.length];
+        MovieLabelStore.Pool pool = new MovieLabelStore.Pool();
+        RowBuilder row = new RowBuilder();
+        int edges = 0;
+        for (int a = 0; a < n; a++) {
+            offsets[a] = edges;
+            row.gather(casts, a);
+            // one edge per run of pairs with the same co-star
+            for (int k = 0, end; k < row.size(); k = end) {
+                end = row.runEnd(k);
+                if (edges == neighbors.length) {
+                    neighbors = Arrays.copyOf(neighbors, edges*2);
+                    words = Arrays.copyOf(words, edges*2);
+                }
+                int b = row.coStarAt(k);
+                neighbors[edges] = b;
+                // a co-star with a smaller ID already has this pair's label in their row
+                if (end - k > 1 && b < a) words[edges] = words[findEdge(casts, neighbors, offsets[b], offsets[b+1], a)];
+                else words[edges] = row.label(pool, k, end);
+                edges++;
+            }
+        }
+        offsets[n] = edges;
+
+        Metrics.time(Metrics.timer("load.compactEdges"), start);
+        // trim the arrays down to their final sizes
+        return new CompactActorGraph(casts, offsets, Arrays.copyOf(neighbors, edges),
+                new MovieLabelStore(casts.movieNameTable(), Arrays.copyOf(words, edges), pool.toArray()));
+    }
+
+    /**
+     * Gathers one actor's (co-star, movie) pairs from the casts of their movies, packed into longs by the co-star's
+     * original ID and sorted, so each co-star's pairs form one run and the movies within a run ascend; the scratch
+     * array is reused across actors
+     */
+    static class RowBuilder {
+        private BipartiteActorGraph casts;
+        private long[] pairs = new long[16];
+        private int count = 0;
+
+        void gather(BipartiteActorGraph casts, int a) {
+            this.casts = casts;
+            count = 0;
+            // for each movie this actor appeared in
+            for (int k = casts.movieStart(a); k < casts.movieEnd(a); k++) {
+                int m = casts.movieAt(k);
+                // for each other actor in that movie
+                for (int c = casts.castStart(m); c < casts.castEnd(m); c++) {
+                    int b = casts.castAt(c);
+                    if (b != a) {
+                        if (count == pairs.length) pairs = Arrays.copyOf(pairs, count*2);
+                        pairs[count++] = ((long) casts.originalID(b) << 32) | m;
+                    }
+                }
+            }
+            Arrays.sort(pairs, 0, count);
+        }
+
+        int size() {
+            return count;
+        }
+
+        int coStarAt(int k) {
+            return casts.idOfOriginal((int) (pairs[k] >>> 32));
+        }
+
+        int movieAt(int k) {
+            return (int) pairs[k];
+        }
+
+        /**
+         * Returns the index one past the last pair with the same co-star as the k-th
+         */
+        int runEnd(int k) {
+            int end = k+1;
+            while (end < count && pairs[end] >>> 32 == pairs[k] >>> 32) end++;
+            return end;
+        }
+
+        /**
+         * Returns the label word of the movies of pairs from up to (not including) to, which share a co-star: the
+         * movie's ID for one, otherwise a new entry in the pool
+         */
+        int label(MovieLabelStore.Pool pool, int from, int to) {
+            if (to - from == 1) return movieAt(from);
+            int word = pool.start(to - from);
+            for (int k = from; k < to; k++) pool.add(movieAt(k));
+            return word;
+        }
+    }
+
+    /**
+     * Returns the bipartite actor-movie graph this graph's co-star edges were built from
+     */
+    public BipartiteActorGraph casts() {
+        return casts;
+    }
+
+    // raw CSR arrays, for writing snapshots
+    int[] offsetArray() {
+        return offsets;
+    }
+
+    int[] neighborArray() {
+        return neighbors;
+    }
+
+    MovieLabelStore labels() {
+        return labels;
+    }
+
+    /**
+     * Returns the int ID of an actor, or -1 if they aren't in the graph
+     */
+    public int idOf(String actor) {
+        Integer id = actorIDs.get(actor);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the name of the actor with the given ID
+     */
+    public String nameOf(int id) {
+        return actorNames[id];
+    }
+
+    /**
+     * Returns the index of the first edge of an actor; the actor's edges run up to edgeEnd(id)
+     */
+    public int edgeStart(int id) {
+        return offsets[id];
+    }
+
+    /**
+     * Returns the index one past the last edge of an actor
+     */
+    public int edgeEnd(int id) {
+        return offsets[id+1];
+    }
+
+    /**
+     * Returns the actor ID at the far end of an edge
+     */
+    public int neighborAt(int edge) {
+        return neighbors[edge];
+    }
+
+    /**
+     * Returns the number of movies shared across an edge
+     */
+    public int labelSize(int edge) {
+        return labels.size(edge);
+    }
+
+    /**
+     * Returns the set of movies shared across an edge as a read-only view
+     */
+    public Set<String> labelAt(int edge) {
+        return labels.labelAt(edge);
+    }
+
+    /**
+     * Finds the edge from actor u to actor v by binary search over u's neighbors, or -1 if there isn't one
+     */
+    public int edgeIndex(int u, int v) {
+        return findEdge(casts, neighbors, offsets[u], offsets[u+1], v);
+    }
+
+    /**
+     * Finds actor v among the neighbors from up to (not including) to, one actor's row sorted by original ID, or
+     * returns -1 if they aren't there
+     */
+    static int findEdge(BipartiteActorGraph casts, int[] neighbors, int from, int to, int v) {
+        int low = from, high = to-1, original = casts.originalID(v);
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int at = casts.originalID(neighbors[mid]);
+            if (at < original) low = mid+1;
+            else if (at > original) high = mid-1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    public int originalID(int id) {
+        return casts.originalID(id);
+    }
+
+    public int idOfOriginal(int original) {
+        return casts.idOfOriginal(original);
+    }
+
+    /**
+     * Returns the number of distinct movies referenced by edge labels
+     */
+    public int numMovies() {
+        return movieNames.length;
+    }
+
+    /**
+     * Returns the ID of a vertex, throwing if it isn't in the graph (matching AdjacencyMapGraph's failure on unknown
+     * vertices)
+     */
+    private int requireID(String actor) {
+        Integer id = actorIDs.get(actor);
+        if (id == null) throw new IllegalArgumentException("No such actor: " + actor);
+        return id;
+    }
+
+    public int numVertices() {
+        return actorNames.length;
+    }
+
+    public int numEdges() {
+        // each undirected co-star edge is stored once per direction, like insertUndirected does
+        return neighbors.length;
+    }
+
+    public Iterable<String> vertices() {
+        return casts.vertices();
+    }
+
+    public boolean hasVertex(String v) {
+        return actorIDs.containsKey(v);
+    }
+
+    public boolean hasEdge(String u, String v) {
+        Integer a = actorIDs.get(u), b = actorIDs.get(v);
+        return a != null && b != null && edgeIndex(a, b) >= 0;
+    }
+
+    public Set<String> getLabel(String u, String v) {
+        Integer a = actorIDs.get(u), b = actorIDs.get(v);
+        if (a == null || b == null) return null;
+        int edge = edgeIndex(a, b);
+        return edge < 0 ? null : labelAt(edge);
+    }
+
+    public int degree(int id) {
+        return offsets[id+1] - offsets[id];
+    }
+
+    public int outDegree(String v) {
+        return degree(requireID(v));
+    }
+
+    public int inDegree(String v) {
+        // every edge is undirected, so in and out degree agree
+        return outDegree(v);
+    }
+
+    public Iterable<String> outNeighbors(String v) {
+        final int id = requireID(v);
+        return new Iterable<String>() {
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    int edge = offsets[id];
+                    public boolean hasNext() {
+                        return edge < offsets[id+1];
+                    }
+                    public String next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        return actorNames[neighbors[edge++]];
+                    }
+                };
+            }
+        };
+    }
+
+    public Iterable<String> inNeighbors(String v) {
+        return outNeighbors(v);
+    }
+
+    public void insertVertex(String v) {
+        throw new UnsupportedOperationException("CompactActorGraph is immutable");
+    }
+
+    public void insertDirected(String u, String v, Set<String> e) {
+        throw new UnsupportedOperationException("CompactActorGraph is immutable");
+    }
+
+    public void insertUndirected(String u, String v, Set<String> e) {
+        throw new UnsupportedOperationException("CompactActorGraph is immutable");
+    }
+
+    public void removeVertex(String v) {
+        throw new UnsupportedOperationException("CompactActorGraph is immutable");
+    }
+
+    public void removeDirected(String u, String v) {
+        throw new UnsupportedOperationException("CompactActorGraph is immutable");
+    }
+
+    public void removeUndirected(String u, String v) {
+        throw new UnsupportedOperationException("CompactActorGraph is immutable");
+    }
+
+    public String toString() {
+        return "CompactActorGraph: " + numVertices() + " actors, " + numEdges() + " edges, " + numMovies() + " movies";
+    }
+}
@@ -0,0 +1,251 @@
+import java.util.*;
+
+/**
+ * Connected-component labeling of the actors, computed once at load time by union-find over each movie's cast (every
+ * actor in a cast is joined with the first one), so it needs only the movie-actors rows and never walks co-star edges.
+ * Components get dense IDs and their members are stored together, so "is X reachable from the center" and "how many
+ * actors are connected" are array lookups, and listing the actors unreachable from the center only visits those
+ * actors.
+ *
+ * After a delta (see GraphDelta), update carries the index over instead of relabeling every cast: a delta that only
+ * adds actors to casts just joins the components its changed casts touch, and one that removes any re-joins only the
+ * actors of the components it removed them from. Either way the result is the index a fresh build would give; the
+ * cost left over is a pass over the per-actor arrays to renumber and regroup them.
+ */
+public class ComponentIndex {
+
+    private final IndexedActorGraph g;
+    private final int[] component;              // actor ID -> component ID
+    private final int[] memberOffsets;          // component ID -> first slot in members
+    private final int[] members;                // actor IDs grouped by component, by original ID within each
+
+    /**
+     * Takes a compact or bipartite graph and labels its components from the casts it was built from
+     */
+    public ComponentIndex(IndexedActorGraph g) {
+        this(g, label(casts(g)));
+    }
+
+    /**
+     * Takes a graph and its actors' component IDs, and groups the actors by component
+     */
+    private ComponentIndex(IndexedActorGraph g, int[] component) {
+        this.g = g;
+        this.component = component;
+        BipartiteActorGraph casts = casts(g);
+        int n = component.length, components = 0;
+        for (int a = 0; a < n; a++) components = Math.max(components, component[a]+1);
+        memberOffsets = new int[components+1];
+        for (int a = 0; a < n; a++) memberOffsets[component[a]+1]++;
+        for (int c = 0; c < components; c++) memberOffsets[c+1] += memberOffsets[c];
+        members = new int[n];
+        int[] fill = Arrays.copyOf(memberOffsets, components);
+        for (int original = 0; original < n; original++) {
+            int a = casts.idOfOriginal(original);
+            members[fill[component[a]]++] = a;
+        }
+    }
+
+    private static BipartiteActorGraph casts(IndexedActorGraph g) {
+        return g instanceof CompactActorGraph ? ((CompactActorGraph) g).casts() : (BipartiteActorGraph) g;
+    }
+
+    /**
+     * Returns every actor's component ID, from union-find over every movie's cast
+     */
+    private static int[] label(BipartiteActorGraph casts) {
+        int n = casts.numVertices();
+        int[] parent = new int[n], size = new int[n];
+        for (int a = 0; a < n; a++) {
+            parent[a] = a;
+            size[a] = 1;
+        }
+        for (int m = 0; m < casts.numMovies(); m++) joinCast(casts, m, null, parent, size);
+        return number(casts, null, parent);
+    }
+
+    /**
+     * Returns the index of the graph an update produced. Components the update's changed casts didn't reach are
+     * kept whole; if the update added to casts only, the components its changed casts reach are joined, and if it
+     * removed anyone, the components they were removed from are split back into actors and re-joined from their
+     * casts. An update from some other graph than this index's is labeled from scratch.
+     */
+    public ComponentIndex update(GraphDelta.Update update) {
+        if (update.after() == g) return this;
+        if (update.before() != g) return new ComponentIndex(update.after());
+        BipartiteActorGraph casts = casts(update.after());
+        int oldActors = component.length, n = casts.numVertices(), kept = numComponents();
+        int[] touched = update.touchedIDs();
+
+        // a removal can split the components it was made in, so those go back to one node per actor
+        boolean[] dissolved = new boolean[kept];
+        if (update.removedAny()) for (int a : touched) dissolved[component[a]] = true;
+
+        // union-find nodes: one per kept component, then one per actor of a dissolved component and per new actor
+        int[] nodeOf = new int[n];
+        int nodes = kept;
+        for (int a = 0; a < oldActors; a++) nodeOf[a] = dissolved[component[a]] ? nodes++ : component[a];
+        for (int a = oldActors; a < n; a++) nodeOf[a] = nodes++;
+        int[] parent = new int[nodes], size = new int[nodes];
+        for (int node = 0; node < nodes; node++) {
+            parent[node] = node;
+            size[node] = node < kept ? componentSize(node) : 1;
+        }
+
+        // join the casts of every actor that could have gained or lost a connection: those in a changed cast, those
+        // of a dissolved component and the new ones, all of whose casts hold only nodes from those same groups
+        for (int a : touched) joinMovies(casts, a, nodeOf, parent, size);
+        for (int c = 0; c < kept; c++) {
+            if (!dissolved[c]) continue;
+            for (int slot = memberOffsets[c]; slot < memberOffsets[c+1]; slot++) joinMovies(casts, members[slot], nodeOf, parent, size);
+        }
+        for (int a = oldActors; a < n; a++) joinMovies(casts, a, nodeOf, parent, size);
+        return new ComponentIndex(update.after(), number(casts, nodeOf, parent));
+    }
+
+    /**
+     * Joins the casts of every movie an actor is in
+     */
+    private static void joinMovies(BipartiteActorGraph casts, int a, int[] nodeOf, int[] parent, int[] size) {
+        for (int k = casts.movieStart(a); k < casts.movieEnd(a); k++) joinCast(casts, casts.movieAt(k), nodeOf, parent, size);
+    }
+
+    /**
+     * Unions the node of every member of a movie's cast with the first one's, where an actor's node is nodeOf[actor]
+     * (the actor itself if nodeOf is null), keeping each root's tree size for union by size
+     */
+    private static void joinCast(BipartiteActorGraph casts, int m, int[] nodeOf, int[] parent, int[] size) {
+        if (casts.castEnd(m) == casts.castStart(m)) return;
+        int first = casts.castAt(casts.castStart(m));
+        first = find(parent, nodeOf == null ? first : nodeOf[first]);
+        for (int k = casts.castStart(m)+1; k < casts.castEnd(m); k++) {
+            int other = nodeOf == null ? casts.castAt(k) : nodeOf[casts.castAt(k)];
+            other = find(parent, other);
+            if (other == first) continue;
+            // hang the smaller tree under the larger one
+            if (size[other] > size[first]) {
+                int swap = first;
+                first = other;
+                other = swap;
+            }
+            parent[other] = first;
+            size[first] += size[other];
+        }
+    }
+
+    /**
+     * Numbers the union-find roots in order of their lowest original actor ID and returns each actor's component ID
+     */
+    private static int[] number(BipartiteActorGraph casts, int[] nodeOf, int[] parent) {
+        int n = casts.numVertices();
+        int[] component = new int[n];
+        int[] rootComponent = new int[parent.length];
+        Arrays.fill(rootComponent, -1);
+        int components = 0;
+        for (int original = 0; original < n; original++) {
+            int a = casts.idOfOriginal(original);
+            int root = find(parent, nodeOf == null ? a : nodeOf[a]);
+            if (rootComponent[root] < 0) rootComponent[root] = components++;
+            component[a] = rootComponent[root];
+        }
+        return component;
+    }
+
+    /**
+     * Returns the root of an actor's tree, halving the path to it along the way
+     */
+    private static int find(int[] parent, int a) {
+        while (parent[a] != a) {
+            parent[a] = parent[parent[a]];
+            a = parent[a];
+        }
+        return a;
+    }
+
+    /**
+     * Returns the graph this index labels
+     */
+    public IndexedActorGraph graph() {
+        return g;
+    }
+
+    public int numComponents() {
+        return memberOffsets.length-1;
+    }
+
+    /**
+     * Returns the component ID of an actor, or -1 if they aren't in the graph
+     */
+    public int componentOf(String actor) {
+        int id = g.idOf(actor);
+        return id < 0 ? -1 : component[id];
+    }
+
+    /**
+     * Returns the component ID of the actor with the given ID
+     */
+    int component(int id) {
+        return component[id];
+    }
+
+    /**
+     * Returns the first slot of a component's members, for memberAt
+     */
+    int memberStart(int c) {
+        return memberOffsets[c];
+    }
+
+    /**
+     * Returns one past the last slot of a component's members
+     */
+    int memberEnd(int c) {
+        return memberOffsets[c+1];
+    }
+
+    /**
+     * Returns the actor ID in a member slot
+     */
+    int memberAt(int slot) {
+        return members[slot];
+    }
+
+    /**
+     * Returns the number of actors in a component
+     */
+    public int componentSize(int c) {
+        return memberOffsets[c+1] - memberOffsets[c];
+    }
+
+    /**
+     * Returns how many actors an actor is connected to, themself included, or 0 if they aren't in the graph
+     */
+    public int connectedCount(String actor) {
+        int c = componentOf(actor);
+        return c < 0 ? 0 : componentSize(c);
+    }
+
+    /**
+     * Returns whether there is a path between two actors; false if either isn't in the graph
+     */
+    public boolean connected(String a, String b) {
+        int c = componentOf(a);
+        return c >= 0 && c == componentOf(b);
+    }
+
+    /**
+     * Returns every actor with no path to the given actor (everyone, if they aren't in the graph), sorted by name
+     */
+    public SortedSet<String> unreachableFrom(String actor) {
+        int c = componentOf(actor);
+        SortedSet<String> unreachable = new TreeSet<>();
+        // everyone grouped before and after the actor's own component
+        int start = c < 0 ? members.length : memberOffsets[c], end = c < 0 ? members.length : memberOffsets[c+1];
+        for (int k = 0; k < start; k++) unreachable.add(g.nameOf(members[k]));
+        for (int k = end; k < members.length; k++) unreachable.add(g.nameOf(members[k]));
+        return unreachable;
+    }
+
+    public String toString() {
+        return "ComponentIndex: " + numComponents() + " components over " + members.length + " actors";
+    }
+}
@@ -0,0 +1,438 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Applies a delta file of cast changes to a loaded actor graph, so new movies and cast changes can be picked up
+ * without re-reading the three input files. Each line of a delta is a movieID|actorID row like the ones in
+ * movie-actors.txt, prefixed with + if the actor joined that movie's cast or - if they left it (no prefix means +).
+ * IDs are resolved through the same actors and movies files the graph was built from, whose ID lookups are parsed
+ * when the first delta is applied (see GraphLoader.names), so runs that never apply one never hold them; if a delta
+ * names an ID they don't have yet, only the lines appended to those files since are parsed.
+ *
+ * The graphs are immutable, so apply returns a new version alongside the old one, which stays valid for anyone still
+ * reading it. Every actor and movie keeps their ID across versions: new ones are appended, and an actor who leaves
+ * every movie stays on as a vertex with no edges, just as they would if their edges were removed from an
+ * AdjacencyMapGraph. Only the rows of actors in a changed cast are rebuilt; every other row is block-copied, and the
+ * name lookups of the new version are layered over the old version's instead of being rehashed.
+ *
+ * Block-copying still writes out a whole new set of CSR arrays, so each delta costs a copy of the graph's arrays (and
+ * the memory for both versions while the old one is in use) no matter how few rows change; on a large graph that is
+ * tens to hundreds of milliseconds rather than the time to rebuild the changed rows alone.
+ */
+public class GraphDelta {
+
+    private static final int MAX_REPORTED = 10;      // skipped rows printed per delta before going quiet
+
+    private final String IDtoActorPathName, IDtoMoviePathName;
+    private GraphLoader.Names IDtoActor, IDtoMovie;  // parsed on first use
+
+    /**
+     * Takes the names of the actors and movies files the graph was built from
+     */
+    public GraphDelta(String IDtoActorPathName, String IDtoMoviePathName) {
+        this.IDtoActorPathName = IDtoActorPathName;
+        this.IDtoMoviePathName = IDtoMoviePathName;
+    }
+
+    /**
+     * Takes a graph (compact or bipartite) and the name of a delta file, and returns the update holding the graph
+     * with the delta applied; if the file can't be read or changes nothing, the update's new graph is the old one
+     */
+    public synchronized Update apply(IndexedActorGraph g, String deltaPathName) {
+        long start = System.nanoTime();
+        Update update = new Update(g);
+        // movie name -> (actor name -> whether they joined it); a later row for the same pair overrides an earlier one
+        Map<String,Map<String,Boolean>> changes = new LinkedHashMap<>();
+        if (!read(deltaPathName, changes, update)) {
+            update.nanos = System.nanoTime() - start;
+            return update;
+        }
+
+        BipartiteActorGraph casts = g instanceof CompactActorGraph ? ((CompactActorGraph) g).casts() : (BipartiteActorGraph) g;
+        int actors = casts.numVertices(), movies = casts.numMovies();
+        List<String> addedActors = new ArrayList<>(), addedMovies = new ArrayList<>();
+        Map<String,Integer> addedActorIDs = new HashMap<>(), addedMovieIDs = new HashMap<>();
+        TreeMap<Integer,int[]> castRows = new TreeMap<>();          // movie ID -> new cast, for every changed movie
+        BitSet touched = new BitSet(actors);                        // existing actors in an old or new changed cast
+
+        for (Map.Entry<String,Map<String,Boolean>> movie : changes.entrySet()) {
+            int m = casts.movieIdOf(movie.getKey());
+            // start from the movie's current cast, then apply this delta's rows for it
+            Set<Integer> cast = new LinkedHashSet<>();
+            if (m >= 0) for (int k = casts.castStart(m); k < casts.castEnd(m); k++) cast.add(casts.castAt(k));
+            boolean changed = false;
+            for (Map.Entry<String,Boolean> row : movie.getValue().entrySet()) {
+                String actor = row.getKey();
+                Integer id = casts.idOf(actor) >= 0 ? Integer.valueOf(casts.idOf(actor)) : addedActorIDs.get(actor);
+                if (row.getValue()) {
+                    // a new actor gets the next ID
+                    if (id == null) {
+                        id = actors + addedActors.size();
+                        addedActorIDs.put(actor, id);
+                        addedActors.add(actor);
+                    }
+                    changed |= cast.add(id);
+                }
+                else if (id != null && cast.remove(id)) {
+                    changed = true;
+                    update.removed = true;
+                }
+            }
+            if (!changed) continue;
+            // a new movie gets the next ID once it has a cast
+            if (m < 0) {
+                m = movies + addedMovies.size();
+                addedMovieIDs.put(movie.getKey(), m);
+                addedMovies.add(movie.getKey());
+            }
+            else for (int k = casts.castStart(m); k < casts.castEnd(m); k++) touched.set(casts.castAt(k));
+            int[] row = new int[cast.size()];
+            int slot = 0;
+            for (int id : cast) {
+                row[slot++] = id;
+                if (id < actors) touched.set(id);
+            }
+            castRows.put(m, row);
+            update.movies++;
+        }
+        if (castRows.isEmpty()) {
+            update.nanos = System.nanoTime() - start;
+            return update;
+        }
+        int n = actors + addedActors.size(), totalMovies = movies + addedMovies.size();
+
+        // each affected actor's movie list: their unchanged movies plus the changed movies they are now in
+        Map<Integer,List<Integer>> joined = new HashMap<>();
+        for (Map.Entry<Integer,int[]> cast : castRows.entrySet()) {
+            for (int id : cast.getValue()) joined.computeIfAbsent(id, k -> new ArrayList<>()).add(cast.getKey());
+        }
+        TreeMap<Integer,int[]> movieRows = new TreeMap<>();
+        for (int a = touched.nextSetBit(0); a >= 0; a = touched.nextSetBit(a+1)) movieRows.put(a, moviesOf(casts, castRows, joined, a));
+        for (int a = actors; a < n; a++) movieRows.put(a, moviesOf(casts, castRows, joined, a));
+
+        // new name tables: the old ones with the additions appended
+        String[] actorNames = Arrays.copyOf(casts.actorNameTable(), n);
+        for (int k = 0; k < addedActors.size(); k++) actorNames[actors+k] = addedActors.get(k);
+        String[] movieNames = Arrays.copyOf(casts.movieNameTable(), totalMovies);
+        for (int k = 0; k < addedMovies.size(); k++) movieNames[movies+k] = addedMovies.get(k);
+
+        // a relabeled graph's new actors keep their IDs as their original IDs, past every existing one
+        int[] originalIDs = casts.originalIDArray();
+        if (originalIDs != null) {
+            originalIDs = Arrays.copyOf(originalIDs, n);
+            for (int a = actors; a < n; a++) originalIDs[a] = a;
+        }
+
+        int[][] castCSR = splice(casts.castOffsetArray(), casts.castActorArray(), movies, totalMovies, castRows);
+        int[][] movieCSR = splice(casts.movieOffsetArray(), casts.actorMovieArray(), actors, n, movieRows);
+        BipartiteActorGraph newCasts = new BipartiteActorGraph(actorNames,
+                LayeredMap.over(casts.actorIDTable(), addedActorIDs), movieNames, movieCSR[0], movieCSR[1],
+                castCSR[0], castCSR[1], LayeredMap.over(casts.movieIDTable(), addedMovieIDs), originalIDs);
+
+        update.after = g instanceof CompactActorGraph ? rebuildRows((CompactActorGraph) g, newCasts, movieRows.navigableKeySet()) : newCasts;
+        update.touched = new int[touched.cardinality()];
+        for (int a = touched.nextSetBit(0), k = 0; a >= 0; a = touched.nextSetBit(a+1)) update.touched[k++] = a;
+        update.addedActors = addedActors.size();
+        update.addedMovies = addedMovies.size();
+        update.nanos = System.nanoTime() - start;
+        return update;
+    }
+
+    /**
+     * Reads a delta file into per-movie changes, counting rows and skipped rows on the update; returns false if the
+     * file can't be read
+     */
+    private boolean read(String deltaPathName, Map<String,Map<String,Boolean>> changes, Update update) {
+        boolean reloaded = false;
+        // try creating a reader for the file, closing it when we're done
+        try (BufferedReader input = new BufferedReader(new FileReader(deltaPathName))) {
+            if (IDtoActor == null) reloadNames();
+            String line;
+            int lineNumber = 0;
+            while ((line = input.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                update.rows++;
+                // an optional sign, then movie ID and actor ID split on the first '|'
+                boolean joined = line.charAt(0) != '-';
+                if (line.charAt(0) == '+' || line.charAt(0) == '-') line = line.substring(1).trim();
+                int bar = line.indexOf('|');
+                String movie = bar < 0 ? null : IDtoMovie.get(line.substring(0, bar).trim());
+                String actor = bar < 0 ? null : IDtoActor.get(line.substring(bar+1).trim());
+                // the names files may have grown since they were read, so read whatever was appended to them
+                if (bar >= 0 && (movie == null || actor == null) && !reloaded) {
+                    reloadNames();
+                    reloaded = true;
+                    movie = IDtoMovie.get(line.substring(0, bar).trim());
+                    actor = IDtoActor.get(line.substring(bar+1).trim());
+                }
+                if (movie == null || actor == null) {
+                    if (update.skipped++ < MAX_REPORTED) {
+                        System.err.println("Skipping line " + lineNumber + " of " + deltaPathName + ": " + line);
+                    }
+                    continue;
+                }
+                changes.computeIfAbsent(movie, k -> new LinkedHashMap<>()).put(actor, joined);
+            }
+        }
+        // catch if the file doesn't exist or can't be read
+        catch (IOException e) {
+            System.err.println("Cannot read delta file.\n" + e.getMessage());
+            return false;
+        }
+        // or if a names file went away partway through being parsed
+        catch (IllegalStateException e) {
+            System.err.println("Cannot read names files.\n" + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses the ID lookups of the names files the first time, and after that only what was appended to them since
+     */
+    private void reloadNames() {
+        IDtoActor = IDtoActor == null ? GraphLoader.names(IDtoActorPathName) : IDtoActor.refreshed();
+        IDtoMovie = IDtoMovie == null ? GraphLoader.names(IDtoMoviePathName) : IDtoMovie.refreshed();
+    }
+
+    /**
+     * Returns an actor's sorted movie IDs after the changed casts are applied
+     */
+    private static int[] moviesOf(BipartiteActorGraph casts, Map<Integer,int[]> castRows,
+                                  Map<Integer,List<Integer>> joined, int a) {
+        List<Integer> now = joined.getOrDefault(a, Collections.emptyList());
+        int[] row = new int[(a < casts.numVertices() ? casts.movieEnd(a) - casts.movieStart(a) : 0) + now.size()];
+        int count = 0;
+        if (a < casts.numVertices()) {
+            // keep the movies whose casts didn't change
+            for (int k = casts.movieStart(a); k < casts.movieEnd(a); k++) {
+                if (!castRows.containsKey(casts.movieAt(k))) row[count++] = casts.movieAt(k);
+            }
+        }
+        for (int m : now) row[count++] = m;
+        row = Arrays.copyOf(row, count);
+        Arrays.sort(row);
+        return row;
+    }
+
+    /**
+     * Builds the compact graph over the new casts, rebuilding the co-star rows of the given actors (in ascending
+     * order) and block-copying every other row from the old compact graph, whose co-stars and shared movies can't
+     * have changed
+     */
+    private static CompactActorGraph rebuildRows(CompactActorGraph old, BipartiteActorGraph casts, SortedSet<Integer> rebuilt) {
+        int oldActors = old.numVertices(), n = casts.numVertices();
+        MovieLabelStore oldLabels = old.labels();
+        // new labels go after the old ones, so the label words of copied rows still point at theirs
+        MovieLabelStore.Pool pool = new MovieLabelStore.Pool(oldLabels.poolArray());
+
+        // rebuild the affected rows: neighbors, plus the label word of each edge
+        TreeMap<Integer,int[]> neighborRows = new TreeMap<>(), wordRows = new TreeMap<>();
+        CompactActorGraph.RowBuilder row = new CompactActorGraph.RowBuilder();
+        for (int a : rebuilt) {
+            row.gather(casts, a);
+            int edges = 0;
+            for (int k = 0; k < row.size(); k = row.runEnd(k)) edges++;
+            int[] neighbors = new int[edges], words = new int[edges];
+            for (int k = 0, end, edge = 0; k < row.size(); k = end, edge++) {
+                end = row.runEnd(k);
+                int b = neighbors[edge] = row.coStarAt(k);
+                if (end - k == 1) words[edge] = row.movieAt(k);
+                // a co-star whose row isn't rebuilt shares the same movies as before, and one whose row was rebuilt
+                // already has the new label; only a pair of rebuilt actors reaching it for the first time adds one
+                else if (!rebuilt.contains(b)) words[edge] = oldLabels.wordArray()[old.edgeIndex(b, a)];
+                else if (b < a) {
+                    int[] other = neighborRows.get(b);
+                    words[edge] = wordRows.get(b)[CompactActorGraph.findEdge(casts, other, 0, other.length, a)];
+                }
+                else words[edge] = row.label(pool, k, end);
+            }
+            neighborRows.put(a, neighbors);
+            wordRows.put(a, words);
+        }
+
+        // splice the rebuilt rows in; the label words sit in the same slots as the neighbors
+        int[] oldOffsets = old.offsetArray();
+        int[][] neighborCSR = splice(oldOffsets, old.neighborArray(), oldActors, n, neighborRows);
+        int[][] wordCSR = splice(oldOffsets, oldLabels.wordArray(), oldActors, n, wordRows);
+        return new CompactActorGraph(casts, neighborCSR[0], neighborCSR[1],
+                new MovieLabelStore(casts.movieNameTable(), wordCSR[1], pool.toArray()));
+    }
+
+    /**
+     * Takes a CSR offsets/values pair with oldRows rows and returns a new pair with rows rows, where the rows in
+     * changed get their new contents and every other row is copied over in blocks (rows past oldRows that aren't
+     * in changed come out empty)
+     */
+    static int[][] splice(int[] offsets, int[] values, int oldRows, int rows, SortedMap<Integer,int[]> changed) {
+        // work out the new size first so the values are copied exactly once
+        long size = offsets[oldRows];
+        for (Map.Entry<Integer,int[]> row : changed.entrySet()) {
+            int r = row.getKey();
+            if (r < oldRows) size -= offsets[r+1] - offsets[r];
+            size += row.getValue().length;
+        }
+        if (size > Integer.MAX_VALUE) throw new IllegalStateException("Too many entries for one array: " + size);
+        int[] newOffsets = new int[rows+1];
+        int[] newValues = new int[(int) size];
+
+        int from = 0, at = 0;                                // next old row to copy, next free slot
+        for (Map.Entry<Integer,int[]> row : changed.entrySet()) {
+            int r = row.getKey();
+            at = copyRows(offsets, values, oldRows, from, r, newOffsets, newValues, at);
+            newOffsets[r] = at;
+            System.arraycopy(row.getValue(), 0, newValues, at, row.getValue().length);
+            at += row.getValue().length;
+            from = r+1;
+        }
+        at = copyRows(offsets, values, oldRows, from, rows, newOffsets, newValues, at);
+        newOffsets[rows] = at;
+        return new int[][] {newOffsets, newValues};
+    }
+
+    /**
+     * Copies old rows from up to (not including) to into the new arrays starting at slot at, giving rows that didn't
+     * exist before no entries, and returns the next free slot
+     */
+    private static int copyRows(int[] offsets, int[] values, int oldRows, int from, int to,
+                                int[] newOffsets, int[] newValues, int at) {
+        int end = Math.min(to, oldRows);
+        if (from < end) {
+            int shift = at - offsets[from];
+            for (int r = from; r < end; r++) newOffsets[r] = offsets[r] + shift;
+            System.arraycopy(values, offsets[from], newValues, at, offsets[end] - offsets[from]);
+            at += offsets[end] - offsets[from];
+        }
+        for (int r = Math.max(from, oldRows); r < to; r++) newOffsets[r] = at;
+        return at;
+    }
+
+    /**
+     * The result of applying one delta: the graph before and after, which existing actors' casts changed, and counts
+     * of what the delta held
+     */
+    public static class Update {
+        private final IndexedActorGraph before;
+        private IndexedActorGraph after;
+        private int[] touched = new int[0];       // sorted IDs of existing actors who were in a changed cast
+        private boolean removed;                  // whether any actor left a cast
+        int rows, skipped, movies, addedActors, addedMovies;
+        long nanos;
+
+        Update(IndexedActorGraph before) {
+            this.before = before;
+            this.after = before;
+        }
+
+        public IndexedActorGraph before() {
+            return before;
+        }
+
+        public IndexedActorGraph after() {
+            return after;
+        }
+
+        /**
+         * Returns whether the actor with the given ID in the old graph was in a cast that changed
+         */
+        public boolean touched(int id) {
+            return Arrays.binarySearch(touched, id) >= 0;
+        }
+
+        /**
+         * Returns the sorted IDs of the existing actors who were in a cast that changed
+         */
+        int[] touchedIDs() {
+            return touched;
+        }
+
+        /**
+         * Returns whether any actor left a cast, which unlike joining one can disconnect actors
+         */
+        boolean removedAny() {
+            return removed;
+        }
+
+        /**
+         * Returns whether a shortest path tree over the old graph might be wrong for the new one: it is unless it
+         * reached none of the actors whose casts changed, since every new or removed edge has such an actor at
+         * each end
+         */
+        public boolean touches(ShortestPathTree tree) {
+            if (tree.graph() != before) return true;
+            if (tree.root() == null) return true;
+            for (int id : touched) {
+                if (tree.distanceOf(id) >= 0) return true;
+            }
+            return false;
+        }
+
+        public String toString() {
+            return "Applied " + (rows - skipped) + " of " + rows + " rows to " + movies + " movies (" + addedMovies
+                    + " new) and " + touched.length + " existing actors (" + addedActors + " new) in "
+                    + String.format("%.1f", nanos / 1e6) + " ms";
+        }
+    }
+
+    /**
+     * Name -> ID table for a graph version that adds names to its predecessor's: looks in the small table of added
+     * names, then in the shared (never modified) table the first version was built with
+     */
+    static class LayeredMap extends AbstractMap<String,Integer> {
+        private final Map<String,Integer> base, added;
+
+        private LayeredMap(Map<String,Integer> base, Map<String,Integer> added) {
+            this.base = base;
+            this.added = added;
+        }
+
+        /**
+         * Returns a table holding the previous table's names plus the added ones, which must all be new
+         */
+        static Map<String,Integer> over(Map<String,Integer> previous, Map<String,Integer> added) {
+            if (added.isEmpty()) return previous;
+            // keep one layer deep by merging into the previous version's additions
+            if (previous instanceof LayeredMap) {
+                Map<String,Integer> merged = new HashMap<>(((LayeredMap) previous).added);
+                merged.putAll(added);
+                return new LayeredMap(((LayeredMap) previous).base, merged);
+            }
+            return new LayeredMap(previous, new HashMap<>(added));
+        }
+
+        public Integer get(Object key) {
+            Integer id = added.get(key);
+            return id != null ? id : base.get(key);
+        }
+
+        public boolean containsKey(Object key) {
+            return added.containsKey(key) || base.containsKey(key);
+        }
+
+        public int size() {
+            return base.size() + added.size();
+        }
+
+        public Set<Map.Entry<String,Integer>> entrySet() {
+            return new AbstractSet<Map.Entry<String,Integer>>() {
+                public int size() {
+                    return LayeredMap.this.size();
+                }
+                public Iterator<Map.Entry<String,Integer>> iterator() {
+                    final Iterator<Map.Entry<String,Integer>> first = base.entrySet().iterator();
+                    final Iterator<Map.Entry<String,Integer>> second = added.entrySet().iterator();
+                    return new Iterator<Map.Entry<String,Integer>>() {
+                        public boolean hasNext() {
+                            return first.hasNext() || second.hasNext();
+                        }
+                        public Map.Entry<String,Integer> next() {
+                            return first.hasNext() ? first.next() : second.next();
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,597 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loads actors.txt, movies.txt and movie-actors.txt straight into a BipartiteActorGraph, without the ID-to-name maps
+ * and movie-to-actor-names map that mapMoviesToActors builds. Each file is mapped with FileChannel.map, split into
+ * chunks at line boundaries, and the chunks are parsed in parallel by a hand-rolled scanner that looks for '|' and
+ * newline bytes instead of running a regex per line. Every actor and movie name is decoded and interned once; cast
+ * rows are resolved to int IDs as they are parsed and go straight into the graph's cast arrays.
+ *
+ * IDs must be integers. A line without an ID, a '|' and a name, or a cast row naming an unknown movie or actor, is
+ * skipped and counted instead of aborting the load. As with split("\\|"), a name ends at the next '|'.
+ *
+ * A load doesn't keep the ID lookups of the names files once the graph is built. GraphDelta parses its own the first
+ * time it needs them (see names), and afterward parses only the lines appended to those files.
+ */
+public class GraphLoader {
+
+    private static final int MIN_CHUNK = 1 << 20;        // don't split files into pieces smaller than 1 MB
+    private static final int LINE_SLACK = 1 << 20;       // room left for pushing a piece's end to the next newline
+    // FileChannel.map takes at most Integer.MAX_VALUE bytes, so pieces aim below that by the slack
+    private static final long MAX_CHUNK = Integer.MAX_VALUE - LINE_SLACK;
+    private static final int REPORTED_MALFORMED = 10;    // malformed lines printed per load before going quiet
+
+    private final int parallelism;
+    private long lines, malformed, nanos, peakHeap;
+    private int reportedMalformed;
+
+    /**
+     * Takes the number of threads to parse with
+     */
+    public GraphLoader(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Uses one thread per available processor, or the bacon.threads system property if it is set
+     */
+    public GraphLoader() {
+        this(Integer.getInteger("bacon.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Takes names of three files (one that contains actors and their IDs, one that contains movies and their IDs, and
+     * one that contains movie IDs and actor IDs that appeared in them) and creates the bipartite actor-movie graph
+     */
+    public BipartiteActorGraph load(String IDtoActorPathName, String IDtoMoviePathName, String IDtoIDPathName) {
+        lines = malformed = 0;
+        reportedMalformed = 0;
+        resetPeakHeap();
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newWorkStealingPool(parallelism);
+        try {
+            // parse both name files at once, then intern the names and index them by ID
+            List<Future<NameChunk>> actorChunks = submit(pool, IDtoActorPathName);
+            List<Future<NameChunk>> movieChunks = submit(pool, IDtoMoviePathName);
+            List<String> actorNames = new ArrayList<>(), movieNames = new ArrayList<>();
+            IDIndex actorIndex = index(actorChunks, actorNames);
+            IDIndex movieIndex = index(movieChunks, movieNames);
+            Metrics.time(Metrics.timer("load.parseNames"), start);
+            long stage = Metrics.start();
+
+            // parse the cast rows against those indexes
+            List<Future<CastChunk>> castChunks = new ArrayList<>();
+            for (long[] range : split(IDtoIDPathName)) {
+                castChunks.add(pool.submit(new CastParser(IDtoIDPathName, range[0], range[1], movieIndex, actorIndex)));
+            }
+            List<CastChunk> casts = new ArrayList<>();
+            for (Future<CastChunk> chunk : castChunks) casts.add(collect(chunk));
+            Metrics.time(Metrics.timer("load.parseCasts"), stage);
+            stage = Metrics.start();
+            BipartiteActorGraph graph = build(casts, actorNames, movieNames);
+            Metrics.time(Metrics.timer("load.buildCasts"), stage);
+            return graph;
+        }
+        finally {
+            pool.shutdown();
+            nanos = System.nanoTime() - start;
+            peakHeap = peakHeap();
+            Metrics.timer("load.textFiles").record(nanos);
+            Metrics.counter("load.lines").add(lines);
+            Metrics.counter("load.malformed").add(malformed);
+        }
+    }
+
+    /**
+     * Returns how many lines the last load read, across all three files
+     */
+    public long lines() {
+        return lines;
+    }
+
+    /**
+     * Returns how many lines the last load skipped as malformed or unresolvable
+     */
+    public long malformed() {
+        return malformed;
+    }
+
+    /**
+     * Returns how long the last load took in milliseconds
+     */
+    public long millis() {
+        return nanos / 1000000;
+    }
+
+    /**
+     * Returns the highest heap usage seen during the last load, in bytes
+     */
+    public long peakHeapBytes() {
+        return peakHeap;
+    }
+
+    /**
+     * Returns a one-line summary of the last load
+     */
+    public String report() {
+        long linesPerSecond = nanos > 0 ? (long) (lines * 1e9 / nanos) : 0;
+        return "Loaded " + lines + " lines in " + millis() + " ms (" + linesPerSecond + " lines/sec, peak heap "
+                + (peakHeap >> 20) + " MB, " + malformed + " malformed lines skipped)";
+    }
+
+    /**
+     * Splits a file into chunks and submits a name parser for each
+     */
+    private List<Future<NameChunk>> submit(ExecutorService pool, String fileName) {
+        List<Future<NameChunk>> chunks = new ArrayList<>();
+        for (long[] range : split(fileName)) chunks.add(pool.submit(new NameParser(fileName, range[0], range[1])));
+        return chunks;
+    }
+
+    /**
+     * Takes the parsed chunks of a name file, interns each distinct name into names, and indexes IDs to those names;
+     * when an ID appears twice the later line wins, like the map put in fileNameToMap
+     */
+    private IDIndex index(List<Future<NameChunk>> chunks, List<String> names) {
+        Map<String,Integer> interned = new HashMap<>();
+        List<NameChunk> parsed = new ArrayList<>();
+        int count = 0, maxID = -1;
+        for (Future<NameChunk> chunk : chunks) {
+            NameChunk c = collect(chunk);
+            parsed.add(c);
+            count += c.count;
+            for (int k = 0; k < c.count; k++) maxID = Math.max(maxID, c.ids[k]);
+        }
+        IDIndex index = new IDIndex(maxID, count);
+        for (NameChunk c : parsed) {
+            for (int k = 0; k < c.count; k++) {
+                Integer slot = interned.get(c.names[k]);
+                // first time we've seen this name, so give it the next slot
+                if (slot == null) {
+                    slot = names.size();
+                    interned.put(c.names[k], slot);
+                    names.add(c.names[k]);
+                }
+                index.put(c.ids[k], slot);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Lays the parsed cast rows out as CSR cast slices, drops duplicate rows and any movie or actor that never appears
+     * in a cast (buildGraph only ever sees those), and renumbers what's left densely
+     */
+    private BipartiteActorGraph build(List<CastChunk> chunks, List<String> actorNames, List<String> movieNames) {
+        // count each movie's rows and give every movie that has any a new, dense ID
+        int[] rows = new int[movieNames.size()];
+        for (CastChunk c : chunks) {
+            for (int k = 0; k < c.count; k++) rows[c.movies[k]]++;
+        }
+        int[] newMovie = new int[movieNames.size()];
+        int movies = 0;
+        for (int m = 0; m < movieNames.size(); m++) newMovie[m] = rows[m] > 0 ? movies++ : -1;
+        int[] castOffsets = new int[movies+1];
+        for (int m = 0; m < movieNames.size(); m++) if (newMovie[m] >= 0) castOffsets[newMovie[m]+1] = rows[m];
+        for (int m = 0; m < movies; m++) castOffsets[m+1] += castOffsets[m];
+
+        // drop every row into its movie's slice
+        int[] castActors = new int[castOffsets[movies]];
+        int[] fill = Arrays.copyOf(castOffsets, movies);
+        for (CastChunk c : chunks) {
+            for (int k = 0; k < c.count; k++) castActors[fill[newMovie[c.movies[k]]]++] = c.actors[k];
+        }
+
+        // sort each cast so repeated rows sit together, then squeeze them out
+        int write = 0;
+        int[] compacted = new int[movies+1];
+        for (int m = 0; m < movies; m++) {
+            Arrays.sort(castActors, castOffsets[m], castOffsets[m+1]);
+            compacted[m] = write;
+            for (int k = castOffsets[m]; k < castOffsets[m+1]; k++) {
+                if (k == castOffsets[m] || castActors[k] != castActors[k-1]) castActors[write++] = castActors[k];
+            }
+        }
+        compacted[movies] = write;
+        castActors = Arrays.copyOf(castActors, write);
+
+        // keep only actors who were in something, numbered in order of their names' first appearance
+        int[] newActor = new int[actorNames.size()];
+        Arrays.fill(newActor, -1);
+        for (int a : castActors) newActor[a] = 0;
+        int actors = 0;
+        for (int a = 0; a < newActor.length; a++) if (newActor[a] == 0) newActor[a] = actors++;
+        for (int k = 0; k < castActors.length; k++) castActors[k] = newActor[castActors[k]];
+
+        String[] actorTable = new String[actors];
+        Map<String,Integer> actorIDs = new HashMap<>(actors * 4 / 3 + 1);
+        for (int a = 0; a < newActor.length; a++) {
+            if (newActor[a] >= 0) {
+                actorTable[newActor[a]] = actorNames.get(a);
+                actorIDs.put(actorNames.get(a), newActor[a]);
+            }
+        }
+        String[] movieTable = new String[movies];
+        for (int m = 0; m < newMovie.length; m++) if (newMovie[m] >= 0) movieTable[newMovie[m]] = movieNames.get(m);
+        return BipartiteActorGraph.fromCasts(actorTable, actorIDs, movieTable, compacted, castActors);
+    }
+
+    /**
+     * Waits for a chunk and folds its line counts into the totals
+     */
+    private <T extends Chunk> T collect(Future<T> future) {
+        T chunk;
+        try {
+            chunk = future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Failed while loading", e.getCause());
+        }
+        lines += chunk.lines;
+        malformed += chunk.malformedCount;
+        for (String report : chunk.malformedLines) {
+            if (reportedMalformed++ < REPORTED_MALFORMED) System.err.println(report);
+        }
+        return chunk;
+    }
+
+    /**
+     * Splits a file into byte ranges of roughly equal size that each start at the beginning of a line, and are small
+     * enough to map in one piece unless a line runs past the slack; a missing file is reported and treated as empty,
+     * like fileNameToMap does
+     */
+    private List<long[]> split(String fileName) {
+        return split(fileName, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Splits the part of a file from one offset (the start of a line) up to another, or its end if that comes first,
+     * the same way
+     */
+    private List<long[]> split(String fileName, long from, long to) {
+        List<long[]> ranges = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long size = Math.min(to, channel.size());
+            long target = Math.min(MAX_CHUNK, Math.max(MIN_CHUNK, (size - from) / (parallelism * 4L) + 1));
+            long start = from;
+            ByteBuffer one = ByteBuffer.allocate(1);
+            while (start < size) {
+                long end = Math.min(size, start + target);
+                // push the end past the next newline so no line is cut in two
+                while (end < size) {
+                    one.clear();
+                    channel.read(one, end - 1);
+                    if (one.get(0) == '\n') break;
+                    end++;
+                }
+                ranges.add(new long[] {start, end});
+                start = end;
+            }
+        }
+        catch (NoSuchFileException e) {
+            System.err.println("Cannot open file.\n" + e.getMessage());
+        }
+        catch (IOException e) {
+            System.err.println("IO error while reading.\n" + e.getMessage());
+        }
+        return ranges;
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    /**
+     * Maps raw IDs from the input files to dense slots, with a flat table when the IDs are reasonably dense and a
+     * hash map when they aren't; safe to read from many threads once built
+     */
+    private static class IDIndex {
+        private int[] table;
+        private Map<Integer,Integer> sparse;
+
+        IDIndex(int maxID, int count) {
+            if (maxID < 8L * count + 1024) {
+                table = new int[maxID+1];
+                Arrays.fill(table, -1);
+                sparse = null;
+            }
+            else {
+                table = null;
+                sparse = new HashMap<>();
+            }
+        }
+
+        void put(int id, int slot) {
+            // an ID past the table grows it while the IDs stay dense, and otherwise moves everything to the map
+            if (table != null && id >= table.length) {
+                if (id < 8L * (slot+1) + 1024) {
+                    int old = table.length;
+                    table = Arrays.copyOf(table, Math.max(id+1, old*2));
+                    Arrays.fill(table, old, table.length, -1);
+                }
+                else {
+                    sparse = new HashMap<>();
+                    for (int k = 0; k < table.length; k++) if (table[k] >= 0) sparse.put(k, table[k]);
+                    table = null;
+                }
+            }
+            if (table != null) table[id] = slot;
+            else sparse.put(id, slot);
+        }
+
+        int get(int id) {
+            if (table != null) return id < table.length ? table[id] : -1;
+            Integer slot = sparse.get(id);
+            return slot == null ? -1 : slot;
+        }
+    }
+
+    /**
+     * Parses the ID lookup of a names file, in parallel; keep it up to date with Names.refreshed. Malformed lines are
+     * skipped and reported as in load.
+     */
+    public static Names names(String fileName) {
+        GraphLoader loader = new GraphLoader();
+        ExecutorService pool = Executors.newWorkStealingPool(loader.parallelism);
+        try {
+            Names names = new Names(fileName);
+            names.index = loader.index(loader.submit(pool, fileName), names.names);
+            return names;
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * One names file's IDs and the names they stand for, as the loader parsed them, plus how far into the file that
+     * went; only the whole lines up to there count as read
+     */
+    public static class Names {
+        private final String fileName;
+        private final List<String> names = new ArrayList<>();    // slot -> name
+        private IDIndex index;                                   // ID -> slot
+        private long readTo;
+
+        /**
+         * Notes where the file's last whole line ends, before it's parsed, so lines appended during the parse are
+         * read again next time rather than missed
+         */
+        private Names(String fileName) {
+            this.fileName = fileName;
+            this.readTo = wholeLines(fileName, 0);
+        }
+
+        /**
+         * Returns the name of an ID written as text, or null if the file has no such (integer) ID
+         */
+        public synchronized String get(String id) {
+            byte[] digits = id.trim().getBytes(StandardCharsets.US_ASCII);
+            int raw = digits.length == 0 ? -1 : Parser.parseInt(ByteBuffer.wrap(digits), 0, digits.length);
+            int slot = raw < 0 ? -1 : index.get(raw);
+            return slot < 0 ? null : names.get(slot);
+        }
+
+        /**
+         * Returns this lookup brought up to date with its file: parsing only the lines appended since it was last
+         * read, or the whole file again if it shrank, since then it was rewritten
+         */
+        public Names refreshed() {
+            long size = new java.io.File(fileName).length();
+            if (size < readTo) return names(fileName);
+            if (size > readTo) readAppended(new GraphLoader(1));
+            return this;
+        }
+
+        /**
+         * Parses the whole lines added to the end of the file since it was last read into the lookup; a later line for
+         * the same ID wins, as in load
+         */
+        private synchronized void readAppended(GraphLoader loader) {
+            long to = wholeLines(fileName, readTo);
+            if (to <= readTo) return;
+            for (long[] range : loader.split(fileName, readTo, to)) {
+                FutureTask<NameChunk> chunk = new FutureTask<>(new NameParser(fileName, range[0], range[1]));
+                chunk.run();
+                NameChunk c = loader.collect(chunk);
+                for (int k = 0; k < c.count; k++) {
+                    index.put(c.ids[k], names.size());
+                    names.add(c.names[k]);
+                }
+            }
+            readTo = to;
+            Metrics.counter("load.namesAppended").add(loader.lines);
+        }
+
+        /**
+         * Returns the offset just past the last newline at or after from, or from if there is none
+         */
+        private static long wholeLines(String fileName, long from) {
+            try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+                ByteBuffer one = ByteBuffer.allocate(1);
+                for (long end = channel.size(); end > from; end--) {
+                    one.clear();
+                    channel.read(one, end - 1);
+                    if (one.get(0) == '\n') return end;
+                }
+            }
+            // a missing or unreadable file has nothing read; parsing it reports why
+            catch (IOException e) {
+                return from;
+            }
+            return from;
+        }
+    }
+
+    /**
+     * What every parser hands back besides its parsed rows
+     */
+    private abstract static class Chunk {
+        long lines, malformedCount;
+        List<String> malformedLines = new ArrayList<>();
+        int count;
+    }
+
+    private static class NameChunk extends Chunk {
+        int[] ids = new int[1024];
+        String[] names = new String[1024];
+    }
+
+    private static class CastChunk extends Chunk {
+        int[] movies = new int[1024];
+        int[] actors = new int[1024];
+    }
+
+    /**
+     * Scans one byte range of a file line by line; subclasses decide what to do with each line's two fields
+     */
+    private abstract static class Parser<T extends Chunk> implements Callable<T> {
+        private final String fileName;
+        private final long start, end;
+        private byte[] scratch = new byte[256];
+
+        Parser(String fileName, long start, long end) {
+            this.fileName = fileName;
+            this.start = start;
+            this.end = end;
+        }
+
+        abstract T chunk();
+
+        /**
+         * Takes the parsed ID and the bytes of the second field and records the row, returning false if it's unusable
+         */
+        abstract boolean accept(T chunk, int id, ByteBuffer buffer, int from, int to);
+
+        public T call() throws IOException {
+            T chunk = chunk();
+            ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            }
+            int limit = buffer.limit();
+            int lineStart = 0;
+            while (lineStart < limit) {
+                // find the end of the line and the first '|' in it
+                int lineEnd = lineStart, bar = -1;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    if (bar < 0 && buffer.get(lineEnd) == '|') bar = lineEnd;
+                    lineEnd++;
+                }
+                int textEnd = lineEnd > lineStart && buffer.get(lineEnd-1) == '\r' ? lineEnd-1 : lineEnd;
+                chunk.lines++;
+                // the second field runs to the next '|' or the end of the line
+                int fieldEnd = bar + 1;
+                while (bar >= 0 && fieldEnd < textEnd && buffer.get(fieldEnd) != '|') fieldEnd++;
+                int id = bar > lineStart ? parseInt(buffer, lineStart, bar) : -1;
+                if (id < 0 || fieldEnd == bar + 1 || !accept(chunk, id, buffer, bar + 1, fieldEnd)) {
+                    chunk.malformedCount++;
+                    if (chunk.malformedLines.size() < REPORTED_MALFORMED) {
+                        chunk.malformedLines.add("Skipping malformed line at byte " + (start + lineStart) + " of "
+                                + fileName + ": " + decode(buffer, lineStart, textEnd));
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+            return chunk;
+        }
+
+        /**
+         * Parses a nonnegative decimal int from a byte range, or returns -1 if it isn't one
+         */
+        static int parseInt(ByteBuffer buffer, int from, int to) {
+            if (to - from > 10) return -1;
+            long value = 0;
+            for (int k = from; k < to; k++) {
+                int digit = buffer.get(k) - '0';
+                if (digit < 0 || digit > 9) return -1;
+                value = value * 10 + digit;
+            }
+            return value > Integer.MAX_VALUE ? -1 : (int) value;
+        }
+
+        String decode(ByteBuffer buffer, int from, int to) {
+            if (to - from > scratch.length) scratch = new byte[Math.max(to - from, scratch.length * 2)];
+            for (int k = from; k < to; k++) scratch[k - from] = buffer.get(k);
+            return new String(scratch, 0, to - from, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Parses ID|name lines
+     */
+    private static class NameParser extends Parser<NameChunk> {
+        NameParser(String fileName, long start, long end) {
+            super(fileName, start, end);
+        }
+
+        NameChunk chunk() {
+            return new NameChunk();
+        }
+
+        boolean accept(NameChunk chunk, int id, ByteBuffer buffer, int from, int to) {
+            if (chunk.count == chunk.ids.length) {
+                chunk.ids = Arrays.copyOf(chunk.ids, chunk.count * 2);
+                chunk.names = Arrays.copyOf(chunk.names, chunk.count * 2);
+            }
+            chunk.ids[chunk.count] = id;
+            chunk.names[chunk.count++] = decode(buffer, from, to);
+            return true;
+        }
+    }
+
+    /**
+     * Parses movieID|actorID lines, resolving both IDs to name slots as it goes
+     */
+    private static class CastParser extends Parser<CastChunk> {
+        private final IDIndex movieIndex, actorIndex;
+
+        CastParser(String fileName, long start, long end, IDIndex movieIndex, IDIndex actorIndex) {
+            super(fileName, start, end);
+            this.movieIndex = movieIndex;
+            this.actorIndex = actorIndex;
+        }
+
+        CastChunk chunk() {
+            return new CastChunk();
+        }
+
+        boolean accept(CastChunk chunk, int id, ByteBuffer buffer, int from, int to) {
+            int actorID = parseInt(buffer, from, to);
+            int movie = movieIndex.get(id), actor = actorID < 0 ? -1 : actorIndex.get(actorID);
+            // a row pointing at a movie or actor that isn't listed can't be placed in the graph
+            if (movie < 0 || actor < 0) return false;
+            if (chunk.count == chunk.movies.length) {
+                chunk.movies = Arrays.copyOf(chunk.movies, chunk.count * 2);
+                chunk.actors = Arrays.copyOf(chunk.actors, chunk.count * 2);
+            }
+            chunk.movies[chunk.count] = movie;
+            chunk.actors[chunk.count++] = actor;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a built actor graph, so startup can skip re-parsing the text files. A snapshot holds the actor
+ * and movie name tables, the bipartite cast arrays and (optionally) the compact co-star arrays, all little-endian,
+ * behind a header that records the format version and the size and modification time of each source text file.
+ * A CRC32 of everything after the magic number is stored at the end.
+ *
+ * Snapshots are read through FileChannel.map, so the file is paged in by the OS (and those pages are shared by every
+ * JVM reading the same snapshot) and each array is bulk-copied out of the mapping. read returns null for a missing,
+ * stale (including one whose source files were deleted or renamed), corrupt or wrong-version snapshot, or one
+ * written in a different VertexOrder, and the caller falls back to the text loader.
+ *
+ * Layout:
+ *   long magic, int version, int flags (bit 0: compact section present, bits 1-7: VertexOrder code)
+ *   int source count, then per source: long length, long lastModified
+ *   int actors, int movies, int appearances, int edges, int labels, long string bytes
+ *   per actor then per movie name: int UTF-8 length (-1 for null), bytes
+ *   int[] castOffsets, castActors, movieOffsets, actorMovies
+ *   int[] originalIDs (relabeled graphs only)
+ *   int[] offsets, neighbors, label words, label pool (compact section only, see MovieLabelStore)
+ *   long CRC32
+ */
+public class GraphSnapshot {
+
+    static final long MAGIC = 0x424143304e534e50L;       // "BAC0NSNP"
+    static final int VERSION = 2;
+    private static final int HAS_COMPACT = 1;
+    private static final int ORDER_SHIFT = 1, ORDER_MASK = 0x7f;
+    private static final int WINDOW = 1 << 30;           // largest region mapped at once
+
+    private GraphSnapshot() {}
+
+    /**
+     * Takes a snapshot file name, whether the caller wants the bipartite graph, the VertexOrder it should be in, and
+     * the text files the graph was built from, and loads the graph if the snapshot is present, intact, in that order
+     * and no older than those files; otherwise returns null
+     */
+    public static IndexedActorGraph read(String snapshotPathName, boolean bipartite, String order,
+                                         String... sourcePathNames) {
+        long start = Metrics.start();
+        IndexedActorGraph g = readGraph(snapshotPathName, bipartite, VertexOrder.code(order), sourcePathNames);
+        if (g != null) Metrics.time(Metrics.timer("load.snapshotRead"), start);
+        return g;
+    }
+
+    private static IndexedActorGraph readGraph(String snapshotPathName, boolean bipartite, int order,
+                                               String... sourcePathNames) {
+        Path path = Paths.get(snapshotPathName);
+        if (!Files.isRegularFile(path)) return null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 16) return null;
+            ByteBuffer head = map(channel, 0, Math.min(size, WINDOW));
+            if (head.getLong() != MAGIC || head.getInt() != VERSION) return null;
+            int flags = head.getInt();
+            if ((flags >>> ORDER_SHIFT & ORDER_MASK) != order) return null;
+
+            // the snapshot is stale if any source has changed or gone away since it was written, since then it
+            // matches no input anymore
+            int sources = head.getInt();
+            if (sources != sourcePathNames.length) return null;
+            for (String source : sourcePathNames) {
+                long length = head.getLong(), modified = head.getLong();
+                File file = new File(source);
+                if (!file.isFile() || file.length() != length || file.lastModified() != modified) return null;
+            }
+
+            // check the whole file against its checksum before trusting any of it
+            if (checksum(channel, 8, size-16) != map(channel, size-8, 8).getLong()) {
+                System.err.println("Snapshot " + snapshotPathName + " is corrupt, rebuilding from text files");
+                return null;
+            }
+
+            int actors = head.getInt(), movies = head.getInt(), appearances = head.getInt();
+            int edges = head.getInt(), labels = head.getInt();
+            long stringBytes = head.getLong();
+            long position = head.position();
+            if (stringBytes > WINDOW) return null;
+
+            // decode the name tables
+            ByteBuffer strings = map(channel, position, stringBytes);
+            String[] actorNames = readStrings(strings, actors);
+            String[] movieNames = readStrings(strings, movies);
+            position += stringBytes;
+            Map<String,Integer> actorIDs = new HashMap<>(actors * 4 / 3 + 1);
+            for (int id = 0; id < actors; id++) actorIDs.put(actorNames[id], id);
+
+            // copy out the cast arrays, then the co-star arrays if they're wanted and present
+            int[] castOffsets = readInts(channel, position, movies+1);
+            position += 4L * (movies+1);
+            int[] castActors = readInts(channel, position, appearances);
+            position += 4L * appearances;
+            int[] movieOffsets = readInts(channel, position, actors+1);
+            position += 4L * (actors+1);
+            int[] actorMovies = readInts(channel, position, appearances);
+            position += 4L * appearances;
+            int[] originalIDs = null;
+            if (order != 0) {
+                originalIDs = readInts(channel, position, actors);
+                position += 4L * actors;
+            }
+            BipartiteActorGraph casts = new BipartiteActorGraph(actorNames, actorIDs, movieNames, movieOffsets,
+                    actorMovies, castOffsets, castActors, null, originalIDs);
+            if (bipartite) return casts;
+            if ((flags & HAS_COMPACT) == 0) return CompactActorGraph.fromBipartite(casts);
+
+            int[] offsets = readInts(channel, position, actors+1);
+            position += 4L * (actors+1);
+            int[] neighbors = readInts(channel, position, edges);
+            position += 4L * edges;
+            int[] words = readInts(channel, position, edges);
+            position += 4L * edges;
+            int[] pool = readInts(channel, position, labels);
+            return new CompactActorGraph(casts, offsets, neighbors, new MovieLabelStore(movieNames, words, pool));
+        }
+        // if error while reading, catch it and let the caller rebuild
+        catch (IOException | RuntimeException e) {
+            System.err.println("Cannot read snapshot " + snapshotPathName + ", rebuilding from text files.\n" + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Takes a snapshot file name, the bipartite cast graph, the compact graph built from it (or null to leave the
+     * compact section out), the VertexOrder the cast graph was relabeled in and the text files they were built from,
+     * and writes the snapshot; returns whether it was written. The file is written beside the target and moved into
+     * place, so readers never see half a snapshot.
+     */
+    public static boolean write(String snapshotPathName, BipartiteActorGraph casts, CompactActorGraph compact,
+                                String order, String... sourcePathNames) {
+        long start = Metrics.start();
+        Path path = Paths.get(snapshotPathName).toAbsolutePath();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        byte[][] actorBytes = encode(casts.actorNameTable());
+        byte[][] movieBytes = encode(casts.movieNameTable());
+        long stringBytes = 0;
+        for (byte[] b : actorBytes) stringBytes += 4 + (b == null ? 0 : b.length);
+        for (byte[] b : movieBytes) stringBytes += 4 + (b == null ? 0 : b.length);
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer out = new Writer(channel);
+            out.putLong(MAGIC);
+            out.putInt(VERSION);
+            out.putInt((compact != null ? HAS_COMPACT : 0) | VertexOrder.code(order) << ORDER_SHIFT);
+            out.putInt(sourcePathNames.length);
+            for (String source : sourcePathNames) {
+                File file = new File(source);
+                out.putLong(file.length());
+                out.putLong(file.lastModified());
+            }
+            out.putInt(casts.numVertices());
+            out.putInt(casts.numMovies());
+            out.putInt(casts.castActorArray().length);
+            out.putInt(compact != null ? compact.neighborArray().length : 0);
+            out.putInt(compact != null ? compact.labels().poolArray().length : 0);
+            out.putLong(stringBytes);
+            for (byte[] b : actorBytes) out.putString(b);
+            for (byte[] b : movieBytes) out.putString(b);
+            out.putInts(casts.castOffsetArray());
+            out.putInts(casts.castActorArray());
+            out.putInts(casts.movieOffsetArray());
+            out.putInts(casts.actorMovieArray());
+            if (VertexOrder.code(order) != 0) out.putInts(casts.originalIDArray());
+            if (compact != null) {
+                out.putInts(compact.offsetArray());
+                out.putInts(compact.neighborArray());
+                out.putInts(compact.labels().wordArray());
+                out.putInts(compact.labels().poolArray());
+            }
+            out.finish();
+        }
+        // if error while writing, catch it; the text files are still there next time
+        catch (IOException e) {
+            System.err.println("Cannot write snapshot " + snapshotPathName + ".\n" + e.getMessage());
+            return false;
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            System.err.println("Cannot replace snapshot " + snapshotPathName + ".\n" + e.getMessage());
+            return false;
+        }
+        Metrics.time(Metrics.timer("load.snapshotWrite"), start);
+        return true;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Returns the CRC32 of a region of the file, mapping it a window at a time
+     */
+    private static long checksum(FileChannel channel, long position, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        for (long done = 0; done < length; ) {
+            long chunk = Math.min(WINDOW, length - done);
+            crc.update(map(channel, position + done, chunk));
+            done += chunk;
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Copies count little-endian ints starting at a file position into a new array, a window at a time
+     */
+    private static int[] readInts(FileChannel channel, long position, int count) throws IOException {
+        int[] values = new int[count];
+        for (int done = 0; done < count; ) {
+            int chunk = Math.min(WINDOW / 4, count - done);
+            map(channel, position + 4L * done, 4L * chunk).asIntBuffer().get(values, done, chunk);
+            done += chunk;
+        }
+        return values;
+    }
+
+    private static String[] readStrings(ByteBuffer buffer, int count) {
+        String[] strings = new String[count];
+        byte[] scratch = new byte[256];
+        for (int k = 0; k < count; k++) {
+            int length = buffer.getInt();
+            if (length < 0) continue;
+            if (length > scratch.length) scratch = new byte[Math.max(length, scratch.length*2)];
+            buffer.get(scratch, 0, length);
+            strings[k] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static byte[][] encode(String[] strings) {
+        byte[][] bytes = new byte[strings.length][];
+        for (int k = 0; k < strings.length; k++) {
+            if (strings[k] != null) bytes[k] = strings[k].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    /**
+     * Buffers little-endian values into a channel, keeping a running CRC32 of everything after the magic number
+     */
+    private static class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 crc = new CRC32();
+        private boolean pastMagic = false;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putLong(long value) throws IOException {
+            room(8);
+            buffer.putLong(value);
+        }
+
+        void putInt(int value) throws IOException {
+            room(4);
+            buffer.putInt(value);
+        }
+
+        void putString(byte[] bytes) throws IOException {
+            putInt(bytes == null ? -1 : bytes.length);
+            if (bytes == null) return;
+            for (int done = 0; done < bytes.length; ) {
+                room(1);
+                int chunk = Math.min(buffer.remaining(), bytes.length - done);
+                buffer.put(bytes, done, chunk);
+                done += chunk;
+            }
+        }
+
+        void putInts(int[] values) throws IOException {
+            for (int done = 0; done < values.length; ) {
+                room(4);
+                int chunk = Math.min(buffer.remaining() / 4, values.length - done);
+                buffer.asIntBuffer().put(values, done, chunk);
+                buffer.position(buffer.position() + 4 * chunk);
+                done += chunk;
+            }
+        }
+
+        /**
+         * Flushes what's buffered, then writes the checksum straight after it
+         */
+        void finish() throws IOException {
+            flush();
+            buffer.putLong(crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        }
+
+        private void room(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            // the magic number is left out of the checksum so a reader can check it first
+            ByteBuffer summed = buffer.duplicate();
+            if (!pastMagic) {
+                summed.position(8);
+                pastMagic = true;
+            }
+            crc.update(summed);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+}
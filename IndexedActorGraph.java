@@ -0,0 +1,40 @@
+import java.util.Set;
+
+/**
+ * An actor graph whose actors are also numbered with dense int IDs from 0 to numVertices()-1, so searches can keep
+ * their state in primitive arrays indexed by ID instead of in maps and trees of names. IDs may have been relabeled for
+ * locality (see VertexOrder); the original IDs the loader gave are kept so row and member orders stay put across
+ * relabeling and delta updates
+ */
+public interface IndexedActorGraph extends Graph<String,Set<String>> {
+
+    /**
+     * Returns the int ID of an actor, or -1 if they aren't in the graph
+     */
+    public int idOf(String actor);
+
+    /**
+     * Returns the name of the actor with the given ID
+     */
+    public String nameOf(int id);
+
+    /**
+     * Returns the ID the loader gave an actor, before any relabeling
+     */
+    public int originalID(int id);
+
+    /**
+     * Returns the ID of the actor the loader gave the given original ID
+     */
+    public int idOfOriginal(int original);
+
+    /**
+     * Returns the number of co-stars of the actor with the given ID, the same as their outDegree
+     */
+    public int degree(int id);
+
+    /**
+     * Returns the number of movies referenced by the graph
+     */
+    public int numMovies();
+}
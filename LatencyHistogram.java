@@ -0,0 +1,112 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds (or any other non-negative values, see Metrics), bucketed the way
+ * HDR histograms are: each power of two is split into 8 equal sub-buckets, so any recorded value is known to within
+ * 12.5% while the whole range of a long fits in a few hundred counters. Any number of threads can record at once;
+ * percentiles are read from a snapshot of the counts and reported as the upper bound of the bucket they fall in.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;                         // 2^3 sub-buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+    private final LongAdder total = new LongAdder(), sum = new LongAdder();
+    private volatile long max = 0;
+
+    /**
+     * Adds one latency, in nanoseconds
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(nanos));
+        total.increment();
+        sum.add(nanos);
+        // only the largest value ever wins the race to be max
+        for (long seen = max; nanos > seen; seen = max) {
+            synchronized (this) {
+                if (nanos > max) max = nanos;
+            }
+        }
+    }
+
+    /**
+     * Returns the bucket a value falls in: values below 8 get a bucket each, then each power of two gets 8
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);                 // position of the leading one
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS-1);  // the next three bits
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the largest value that falls in a bucket
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1, sub = bucket % SUB_BUCKETS;
+        long low = (1L << exponent) + ((long) sub << (exponent - SUB_BITS));
+        return low + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns the value (rounded up to its bucket) below which the given fraction of recorded values fall
+     */
+    public long percentile(double fraction) {
+        long[] snapshot = new long[counts.length()];
+        long n = 0;
+        for (int k = 0; k < snapshot.length; k++) n += snapshot[k] = counts.get(k);
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        for (int k = 0; k < snapshot.length; k++) {
+            rank -= snapshot[k];
+            if (rank <= 0) return Math.min(upperBound(k), max);
+        }
+        return max;
+    }
+
+    /**
+     * Clears every count
+     */
+    public void reset() {
+        for (int k = 0; k < counts.length(); k++) counts.set(k, 0);
+        total.reset();
+        sum.reset();
+        synchronized (this) {
+            max = 0;
+        }
+    }
+
+    /**
+     * Returns count, mean and p50/p90/p99/p999/max, in microseconds
+     */
+    public String toString() {
+        return summary(1e3, "us");
+    }
+
+    /**
+     * Returns count, mean and p50/p90/p99/p999/max, each divided by scale and followed by unit, so the same
+     * buckets can hold sizes and counts as well as nanoseconds
+     */
+    public String summary(double scale, String unit) {
+        return String.format("count=%d mean=%.1f%s p50=%.1f%s p90=%.1f%s p99=%.1f%s p999=%.1f%s max=%.1f%s", count(),
+                mean() / scale, unit, percentile(0.5) / scale, unit, percentile(0.9) / scale, unit,
+                percentile(0.99) / scale, unit, percentile(0.999) / scale, unit, max() / scale, unit);
+    }
+}
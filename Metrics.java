@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide registry of named counters, timers, value histograms and gauges, so a slow load or command can be
+ * traced to the stage it spent its time in. Instruments are created on first use and live for the whole run; hot
+ * code looks its instruments up once, keeps them in static fields, and checks ENABLED before recording, so with
+ * -Dbacon.metrics=false the checks fold away and with metrics on a record is a few uncontended atomic adds.
+ *
+ * Names are dotted by area: load.* for each loading stage, bfs.* for full searches, path.* for pair searches,
+ * command.* for the console commands and request.* for server requests. Timers and histograms use the bucketing of
+ * LatencyHistogram.
+ *
+ * report returns every instrument as one line, sorted by name; the console and server stats commands print it and
+ * dumpEvery writes it to a file on a schedule.
+ */
+public class Metrics {
+
+    public static final boolean ENABLED = !"false".equals(System.getProperty("bacon.metrics"));
+
+    private static final ConcurrentMap<String,Counter> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String,LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String,LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String,LongSupplier> gauges = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService dumper;
+
+    private Metrics() {}
+
+    /**
+     * Returns the counter with the given name, creating it the first time
+     */
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /**
+     * Returns the timer with the given name, a histogram of nanoseconds, creating it the first time
+     */
+    public static LatencyHistogram timer(String name) {
+        return timers.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    /**
+     * Returns the histogram of plain values (sizes, counts) with the given name, creating it the first time
+     */
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    /**
+     * Registers a value that is read whenever a report is made, replacing any gauge with the same name
+     */
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Returns a start time for time, or 0 when metrics are off so the clock isn't read
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time since start in a timer and returns it in nanoseconds
+     */
+    public static long time(LatencyHistogram timer, long start) {
+        if (!ENABLED) return 0;
+        long nanos = System.nanoTime() - start;
+        timer.record(nanos);
+        return nanos;
+    }
+
+    /**
+     * Returns every instrument as one line each, sorted by name
+     */
+    public static List<String> report() {
+        TreeMap<String,String> lines = new TreeMap<>();
+        for (Map.Entry<String,Counter> c : counters.entrySet()) lines.put(c.getKey(), c.getValue().toString());
+        for (Map.Entry<String,LatencyHistogram> t : timers.entrySet()) lines.put(t.getKey(), t.getValue().toString());
+        for (Map.Entry<String,LatencyHistogram> h : histograms.entrySet()) lines.put(h.getKey(), h.getValue().summary(1, ""));
+        for (Map.Entry<String,LongSupplier> gauge : gauges.entrySet()) {
+            lines.put(gauge.getKey(), String.valueOf(gauge.getValue().getAsLong()));
+        }
+        List<String> report = new ArrayList<>(lines.size());
+        for (Map.Entry<String,String> line : lines.entrySet()) {
+            if (!line.getValue().startsWith("count=0 ")) report.add(line.getKey() + " " + line.getValue());
+        }
+        return report;
+    }
+
+    /**
+     * Clears every counter, timer and histogram (gauges read live values, so they are left alone)
+     */
+    public static void reset() {
+        for (Counter c : counters.values()) c.reset();
+        for (LatencyHistogram t : timers.values()) t.reset();
+        for (LatencyHistogram h : histograms.values()) h.reset();
+    }
+
+    /**
+     * Writes the report to a file every period seconds on a daemon thread, replacing the file each time so readers
+     * always see a whole report; calling it again moves the dump to the new file and period
+     */
+    public static synchronized void dumpEvery(String pathName, long periodSeconds) {
+        if (dumper != null) dumper.shutdownNow();
+        dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "bacon-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(pathName), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Writes the report to a file now, returning whether it was written
+     */
+    public static boolean dump(String pathName) {
+        Path path = Paths.get(pathName).toAbsolutePath();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(temp))) {
+            out.println("# " + new Date());
+            for (String line : report()) out.println(line);
+        }
+        // if error while writing, catch it and try again next period
+        catch (IOException e) {
+            System.err.println("Cannot write metrics to " + pathName + ".\n" + e.getMessage());
+            return false;
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            System.err.println("Cannot replace metrics file " + pathName + ".\n" + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Count that any number of threads can add to without contending
+     */
+    public static class Counter {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long n) {
+            count.add(n);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+
+        void reset() {
+            count.reset();
+        }
+
+        public String toString() {
+            return String.valueOf(get());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import java.util.*;
+
+/**
+ * Movie labels of the co-star edges of a CompactActorGraph, stored once per pair of co-stars rather than once per
+ * direction, and by movie ID rather than by title (the IDs index the cast graph's name table, so every title is
+ * held once however many labels it is in). Each edge has one int word:
+ *
+ *   word >= 0  the pair shared a single movie, by far the common case, and the word is its ID
+ *   word < 0   the pair shared several, and ~word is the offset of their label in a shared pool of int arrays laid
+ *              end to end: the label's size, then its movie IDs in ascending order
+ *
+ * Both edges of a pair sharing several movies point at the same pool entry. So a pair who made one movie together
+ * costs one int per direction, where a label offset plus a movie ID per direction used to cost two.
+ *
+ * Labels are handed out as read-only Set<String> views listing the titles in ascending movie ID order. Pool entries
+ * are never moved or freed; when a GraphDelta rebuilds a row, the labels it replaces are left behind unreferenced
+ * until the graph is next built from the text files.
+ */
+public class MovieLabelStore {
+
+    private final String[] movieNames;   // movie ID -> title, shared with the cast graph
+    private final int[] words;           // edge index -> movie ID, or ~offset in pool of a label of several movies
+    private final int[] pool;            // labels of several movies: size, then movie IDs ascending
+
+    MovieLabelStore(String[] movieNames, int[] words, int[] pool) {
+        this.movieNames = movieNames;
+        this.words = words;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the number of movies shared across an edge
+     */
+    public int size(int edge) {
+        int word = words[edge];
+        return word >= 0 ? 1 : pool[~word];
+    }
+
+    /**
+     * Returns the set of movies shared across an edge as a read-only view
+     */
+    public Set<String> labelAt(int edge) {
+        return new Label(words[edge]);
+    }
+
+    // raw arrays, for writing snapshots and splicing in rebuilt rows
+    int[] wordArray() {
+        return words;
+    }
+
+    int[] poolArray() {
+        return pool;
+    }
+
+    /**
+     * Growable pool that labels of several movies are appended to while a store is being built
+     */
+    static class Pool {
+        private int[] pool;
+        private int size = 0;
+
+        Pool() {
+            pool = new int[16];
+        }
+
+        /**
+         * Starts from an existing store's pool, so the words pointing into it stay valid
+         */
+        Pool(int[] existing) {
+            pool = Arrays.copyOf(existing, Math.max(16, existing.length + existing.length/8));
+            size = existing.length;
+        }
+
+        /**
+         * Reserves a label of the given number of movies and returns its word; the movies follow with add, in
+         * ascending order
+         */
+        int start(int movies) {
+            if (size + movies + 1 > pool.length) pool = Arrays.copyOf(pool, Math.max(pool.length*2, size + movies + 1));
+            pool[size] = movies;
+            return ~size++;
+        }
+
+        void add(int movie) {
+            pool[size++] = movie;
+        }
+
+        /**
+         * Returns the pool trimmed to what was added
+         */
+        int[] toArray() {
+            return Arrays.copyOf(pool, size);
+        }
+    }
+
+    /**
+     * Read-only set of movie titles behind one word
+     */
+    private class Label extends AbstractSet<String> {
+        private final int word;
+
+        Label(int word) {
+            this.word = word;
+        }
+
+        public int size() {
+            return word >= 0 ? 1 : pool[~word];
+        }
+
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                int k = 0;
+                public boolean hasNext() {
+                    return k < size();
+                }
+                public String next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    int movie = word >= 0 ? word : pool[~word + 1 + k];
+                    k++;
+                    return movieNames[movie];
+                }
+            };
+        }
+    }
+}
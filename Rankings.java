@@ -0,0 +1,143 @@
+import java.util.*;
+
+/**
+ * Answers the ranged and top-k listings of the s, d and c commands over primitive arrays instead of filling a map of
+ * every actor and sorting all of it. s reads the matching distance levels straight out of a ShortestPathTree, d
+ * filters degrees by ID, and c keeps the best or worst k actors in a bounded heap.
+ *
+ * Actors with equal values are listed by name, A to Z (see TIES), so every listing is the same whichever graph mode,
+ * vertex order or search direction produced it. Before these listings, ties came out in whatever order the game's
+ * HashMap of actors iterated in, so the values and actors listed are the same as they were but tied actors may be
+ * listed in a different order.
+ */
+public class Rankings {
+
+    // how every listing orders actors with equal values
+    private static final Comparator<String> TIES = Comparator.naturalOrder();
+
+    private Rankings() {}
+
+    /**
+     * Returns the actors whose separation from the tree's root is strictly between low and high (the root itself
+     * left out), sorted from low to high as name=separation entries
+     */
+    public static List<Map.Entry<String,Double>> bySeparation(ShortestPathTree tree, int low, int high) {
+        IndexedActorGraph g = tree.graph();
+        // the actors in range are one contiguous run of the tree's levels
+        int start = tree.levelStart(Math.max(1, low+1)), end = Math.max(start, tree.levelStart(high));
+        List<Map.Entry<String,Double>> entries = new ArrayList<>(end - start);
+        String[] names = new String[0];
+        for (int level = Math.max(1, low+1); level < high && tree.levelStart(level) < end; level++) {
+            // a level's actors are all tied, so they go in tie order
+            int from = tree.levelStart(level), to = tree.levelStart(level+1);
+            if (names.length < to - from) names = new String[to - from];
+            for (int k = from; k < to; k++) names[k-from] = g.nameOf(tree.reachedAt(k));
+            Arrays.sort(names, 0, to - from, TIES);
+            for (int k = 0; k < to - from; k++) entries.add(new AbstractMap.SimpleEntry<>(names[k], (double) level));
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the actors whose degree is strictly between low and high, sorted from high to low as name=degree
+     * entries
+     */
+    public static List<Map.Entry<String,Double>> byDegree(IndexedActorGraph g, int low, int high) {
+        List<Map.Entry<String,Double>> entries = new ArrayList<>();
+        for (int id = 0; id < g.numVertices(); id++) {
+            int degree = g.degree(id);
+            if (degree > low && degree < high) entries.add(new AbstractMap.SimpleEntry<>(g.nameOf(id), (double) degree));
+        }
+        // highest degree first
+        entries.sort((a, b) -> compare(a.getValue(), a.getKey(), b.getValue(), b.getKey(), true));
+        return entries;
+    }
+
+    /**
+     * Takes every actor's average separation indexed by ID (as CentralityEngine computes it) and returns the k best
+     * centers, smallest separation first, or for negative k the -k worst, largest first, as name=separation entries
+     */
+    public static List<Map.Entry<String,Double>> centers(IndexedActorGraph g, double[] separations, int k) {
+        Order order = new Order(g, separations, k < 0);
+        int size = Math.min(Math.abs(k), separations.length);
+
+        // keep the k first-ranked seen so far in a heap with the one closest to being pushed out on top
+        int[] heap = new int[size];
+        int count = 0;
+        for (int id = 0; id < separations.length && size > 0; id++) {
+            if (count < size) {
+                heap[count] = id;
+                siftUp(heap, count++, order);
+            }
+            else if (order.before(id, heap[0])) {
+                heap[0] = id;
+                siftDown(heap, count, order);
+            }
+        }
+        // pop the heap from the back, so the top k come out in printing order
+        for (int end = count-1; end > 0; end--) {
+            int top = heap[0];
+            heap[0] = heap[end];
+            heap[end] = top;
+            siftDown(heap, end, order);
+        }
+        List<Map.Entry<String,Double>> entries = new ArrayList<>(count);
+        for (int id : heap) entries.add(new AbstractMap.SimpleEntry<>(g.nameOf(id), separations[id]));
+        return entries;
+    }
+
+    /**
+     * Compares two listed actors by value, smallest first (or largest first), breaking ties with TIES
+     */
+    private static int compare(double a, String aName, double b, String bName, boolean largestFirst) {
+        int compare = largestFirst ? Double.compare(b, a) : Double.compare(a, b);
+        return compare != 0 ? compare : TIES.compare(aName, bName);
+    }
+
+    /**
+     * Returns whether a should sit above b in the heap: ranked later, so it's pushed out first
+     */
+    private static boolean above(int a, int b, Order order) {
+        return order.before(b, a);
+    }
+
+    private static void siftUp(int[] heap, int k, Order order) {
+        int id = heap[k];
+        while (k > 0 && above(id, heap[(k-1)/2], order)) {
+            heap[k] = heap[(k-1)/2];
+            k = (k-1)/2;
+        }
+        heap[k] = id;
+    }
+
+    private static void siftDown(int[] heap, int size, Order order) {
+        int k = 0, id = heap[0];
+        while (2*k+1 < size) {
+            int child = 2*k+1;
+            if (child+1 < size && above(heap[child+1], heap[child], order)) child++;
+            if (!above(heap[child], id, order)) break;
+            heap[k] = heap[child];
+            k = child;
+        }
+        heap[k] = id;
+    }
+
+    /**
+     * Ranks actor IDs by value, smallest first (or largest first for the worst centers), then in tie order
+     */
+    private static class Order {
+        private final IndexedActorGraph g;
+        private final double[] values;
+        private final boolean largestFirst;
+
+        Order(IndexedActorGraph g, double[] values, boolean largestFirst) {
+            this.g = g;
+            this.values = values;
+            this.largestFirst = largestFirst;
+        }
+
+        boolean before(int a, int b) {
+            return compare(values[a], g.nameOf(a), values[b], g.nameOf(b), largestFirst) < 0;
+        }
+    }
+}
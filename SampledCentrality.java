@@ -0,0 +1,247 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Estimates every actor's average separation from breadth-first searches out of a random sample of pivot actors
+ * instead of out of every actor. Separation is symmetric, so one search from a pivot gives its distance to everyone
+ * in its component, and an actor's average distance to the pivots in its component estimates their average
+ * distance to the whole component. Pivots are drawn per component without replacement; a component with no more
+ * members than the number of pivots asked for is searched from every member, so small components (and isolated
+ * actors) come out exact, as do large ones once every member has been a pivot.
+ *
+ * Each estimate comes with the half-width of a 95% confidence interval from the spread of the distances to the
+ * pivots (using Student's t below 31 pivots), narrowed by the finite population correction. Below about 10 pivots
+ * an actor's distances to them are often all the same, so those intervals are too narrow. More pivots can be added
+ * at any time; searches already made are kept. untilStable keeps adding pivots until a round leaves the top k of the
+ * ranking unchanged.
+ *
+ * Searches run in parallel the same way CentralityEngine's do.
+ */
+public class SampledCentrality {
+
+    // 97.5% quantiles of Student's t with 1 to 30 degrees of freedom, for the intervals of small samples; past 30
+    // the normal quantile is close enough
+    private static final double[] T = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228, 2.201,
+            2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086, 2.080, 2.074, 2.069, 2.064, 2.060, 2.056,
+            2.052, 2.048, 2.045, 2.042};
+    private static final double Z = 1.96;
+
+    private final IndexedActorGraph g;
+    private final ComponentIndex components;
+    private final int parallelism;
+    private final int[] order;                 // each component's members in the random order they become pivots
+    private final int[] taken;                 // component ID -> how many of its members have been pivots
+    private final boolean[] pivot;             // actor ID -> whether they've been searched from
+    private final long[] sum, sumSquares;      // actor ID -> total and total squared distance to the pivots so far
+    private int largest, pivots;               // largest component's size, pivots searched from in total
+
+    /**
+     * Takes a graph, its component index, the source of randomness for picking pivots and the number of worker
+     * threads to search with
+     */
+    public SampledCentrality(IndexedActorGraph g, ComponentIndex components, Random random, int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        if (components.graph() != g) throw new IllegalArgumentException("component index is for another graph");
+        this.g = g;
+        this.components = components;
+        this.parallelism = parallelism;
+        int n = g.numVertices();
+        order = new int[n];
+        taken = new int[components.numComponents()];
+        pivot = new boolean[n];
+        sum = new long[n];
+        sumSquares = new long[n];
+        // shuffle each component's members in place, so the first k of them are a uniform sample of k
+        for (int c = 0; c < components.numComponents(); c++) {
+            int start = components.memberStart(c), end = components.memberEnd(c);
+            for (int k = start; k < end; k++) order[k] = components.memberAt(k);
+            for (int k = end-1; k > start; k--) {
+                int swap = start + random.nextInt(k - start + 1), id = order[k];
+                order[k] = order[swap];
+                order[swap] = id;
+            }
+            largest = Math.max(largest, end - start);
+        }
+    }
+
+    /**
+     * Takes a graph and its component index, picking pivots with the seed in the bacon.sample.seed system property
+     * (default 1) and using one worker per available processor, or bacon.threads if it is set
+     */
+    public SampledCentrality(IndexedActorGraph g, ComponentIndex components) {
+        this(g, components, new Random(Long.getLong("bacon.sample.seed", 1)),
+                Integer.getInteger("bacon.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Searches from more pivots until every component has been searched from min(its size, perComponent) of its
+     * members, and returns this
+     */
+    public SampledCentrality sampleUpTo(int perComponent) {
+        long start = Metrics.start();
+        // gather the new pivots of every component that's short of them
+        int[] sources = new int[16];
+        int count = 0;
+        for (int c = 0; c < taken.length; c++) {
+            int from = components.memberStart(c) + taken[c];
+            int to = components.memberStart(c) + Math.min(components.componentSize(c), Math.max(perComponent, 0));
+            for (int k = from; k < to; k++) {
+                if (count == sources.length) sources = Arrays.copyOf(sources, count*2);
+                sources[count++] = order[k];
+                pivot[order[k]] = true;
+            }
+            taken[c] = Math.max(taken[c], to - components.memberStart(c));
+        }
+        search(sources, count);
+        pivots += count;
+        Metrics.counter("centrality.pivots").add(count);
+        Metrics.time(Metrics.timer("centrality.sampled"), start);
+        return this;
+    }
+
+    /**
+     * Adds batch more pivots per component at a time until a round leaves the k best centers (or for negative k,
+     * the -k worst) unchanged, or every component has been searched from all of its members, and returns that
+     * ranking as Rankings.centers does
+     */
+    public List<Map.Entry<String,Double>> untilStable(int k, int batch) {
+        if (batch < 1) throw new IllegalArgumentException("batch must be positive: " + batch);
+        List<Map.Entry<String,Double>> previous = null;
+        for (int perComponent = batch; ; perComponent += batch) {
+            sampleUpTo(perComponent);
+            List<Map.Entry<String,Double>> ranking = Rankings.centers(g, separations(), k);
+            // the same actors in the same order means one more round didn't move anyone in or out
+            if (exact() || (previous != null && sameActors(previous, ranking))) return ranking;
+            previous = ranking;
+        }
+    }
+
+    private static boolean sameActors(List<Map.Entry<String,Double>> a, List<Map.Entry<String,Double>> b) {
+        if (a.size() != b.size()) return false;
+        for (int k = 0; k < a.size(); k++) {
+            if (!a.get(k).getKey().equals(b.get(k).getKey())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Searches from each source in parallel, adding its distance to everyone it reaches into the running totals
+     */
+    private void search(int[] sources, int count) {
+        AtomicInteger next = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // a single pivot in a large component is a whole-graph search, so workers claim one source at a time
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < Math.min(parallelism, count); t++) {
+                tasks.add(pool.submit(new Worker(sources, count, next)));
+            }
+            for (ForkJoinTask<?> task : tasks) task.join();
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns every actor's estimated average separation, indexed by actor ID
+     */
+    public double[] separations() {
+        double[] separations = new double[sum.length];
+        for (int id = 0; id < separations.length; id++) {
+            int samples = samples(id);
+            // like the exact separation, an actor with no one to be separated from gets 0
+            if (samples != 0) separations[id] = 1.0 * sum[id] / samples;
+        }
+        return separations;
+    }
+
+    /**
+     * Returns how many pivots an actor's estimate is averaged over: the pivots in their component other than them
+     */
+    private int samples(int id) {
+        return taken[components.component(id)] - (pivot[id] ? 1 : 0);
+    }
+
+    /**
+     * Returns the half-width of the 95% confidence interval around an actor's estimated average separation: 0 once
+     * their whole component has been searched from, and infinite while fewer than 2 pivots are in it
+     */
+    public double halfWidth(String actor) {
+        int id = g.idOf(actor);
+        if (id < 0) throw new IllegalArgumentException("Can't find actor " + actor);
+        int others = components.componentSize(components.component(id)) - 1, samples = samples(id);
+        if (samples >= others) return 0;
+        if (samples < 2) return Double.POSITIVE_INFINITY;
+        double mean = 1.0 * sum[id] / samples;
+        double variance = Math.max(0, (sumSquares[id] - mean * sum[id]) / (samples - 1));
+        // sampling without replacement from the others in the component shrinks the error as the sample nears all
+        double quantile = samples - 1 <= T.length ? T[samples-2] : Z;
+        return quantile * Math.sqrt(variance / samples * (1 - 1.0 * samples / others));
+    }
+
+    /**
+     * Returns whether every estimate is exact, because every component has been searched from all of its members
+     */
+    public boolean exact() {
+        for (int c = 0; c < taken.length; c++) {
+            if (taken[c] < components.componentSize(c)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of pivots searched from so far, over all components
+     */
+    public int pivots() {
+        return pivots;
+    }
+
+    public String toString() {
+        return "SampledCentrality: " + pivots + " pivots over " + taken.length + " components of up to " + largest
+                + " actors" + (exact() ? ", exact" : "");
+    }
+
+    /**
+     * Searches from the sources it claims using BFSKernel buffers that are allocated once and reused for every source
+     */
+    private class Worker implements Runnable {
+        private final int[] sources;
+        private final int count;
+        private final AtomicInteger next;
+        private final int[] dist, parent, queue;
+        private final boolean[] movieSeen;
+        private final long[] frontier;
+
+        Worker(int[] sources, int count, AtomicInteger next) {
+            this.sources = sources;
+            this.count = count;
+            this.next = next;
+            int n = g.numVertices();
+            this.dist = new int[n];
+            Arrays.fill(dist, -1);
+            this.parent = new int[n];
+            this.queue = new int[n];
+            this.movieSeen = g instanceof BipartiteActorGraph ? new boolean[g.numMovies()] : null;
+            this.frontier = BFSKernel.frontierBuffer(g);
+        }
+
+        public void run() {
+            int k;
+            while ((k = next.getAndIncrement()) < count) {
+                int reached = BFSKernel.search(g, sources[k], dist, parent, queue, movieSeen, frontier);
+                // a search costs far more than adding up what it reached, so one lock per search is cheap
+                synchronized (sum) {
+                    for (int r = 1; r < reached; r++) {
+                        int v = queue[r], d = dist[v];
+                        sum[v] += d;
+                        sumSquares[v] += (long) d * d;
+                    }
+                }
+                BFSKernel.clear(g, reached, dist, queue, movieSeen);
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+import java.util.*;
+
+/**
+ * Shortest path tree over an IndexedActorGraph, stored as the dist/parent/queue arrays BFSKernel fills rather than
+ * as a graph of its own. As a Graph it looks exactly like the tree BaconGame.bfs builds: its vertices are the reached
+ * actors and each one has a single out-edge back toward the root, labeled with the movies they share.
+ *
+ * Since actors are reached in order of distance, the actors at each distance sit in one slice of the queue, and the
+ * tree keeps where each slice starts: a histogram of distances whose buckets list their actors, so range queries
+ * over separation only touch the actors in range.
+ *
+ * A tree can be searched again from a new root, reusing its arrays so repeat searches allocate nothing, until it is
+ * frozen to be shared (see ShortestPathTreeCache).
+ */
+public class ShortestPathTree implements Graph<String,Set<String>> {
+
+    private final IndexedActorGraph g;
+    private final int[] dist, parent, queue;
+    private boolean[] movieSeen;            // one flag per movie for searching a bipartite graph, and
+    private long[] frontier;                // bitset for searching bottom-up; both allocated by the first search
+                                            // that needs them and dropped when the tree is frozen
+    private int root = -1;                  // ID of the root, or -1 if the tree is empty
+    private int reached = 0;                // actors in the tree, including the root
+    private long totalSeparation = 0;       // sum of every reached actor's distance from the root
+    private int depth = -1;                 // largest distance from the root, or -1 if the tree is empty
+    private int[] levelStart = new int[8];  // distance -> first queue slot at that distance, through depth+1 (reached);
+                                            // only grows, so repeat searches reuse it
+    private volatile boolean frozen = false; // set once the tree is shared, after which it can't be searched again
+
+    /**
+     * Takes a graph and allocates the buffers for searching it
+     */
+    public ShortestPathTree(IndexedActorGraph g) {
+        this(g, filled(g.numVertices()), new int[g.numVertices()]);
+    }
+
+    /**
+     * Takes a graph plus caller-supplied dist and parent buffers, one slot per actor, with dist all -1
+     */
+    public ShortestPathTree(IndexedActorGraph g, int[] dist, int[] parent) {
+        this.g = g;
+        this.dist = dist;
+        this.parent = parent;
+        this.queue = new int[g.numVertices()];
+    }
+
+    private static int[] filled(int n) {
+        int[] dist = new int[n];
+        Arrays.fill(dist, -1);
+        return dist;
+    }
+
+    /**
+     * Replaces the tree with the shortest path tree rooted at the given actor; an actor not in the graph leaves it
+     * empty, like bfs does
+     */
+    public ShortestPathTree search(String rootActor) {
+        return search(g.idOf(rootActor));
+    }
+
+    /**
+     * Replaces the tree with the shortest path tree rooted at the given actor ID, or empties it for -1
+     */
+    public ShortestPathTree search(int rootID) {
+        if (frozen) throw new IllegalStateException("ShortestPathTree is shared and can't be searched again");
+        // undo the previous search before starting the new one
+        BFSKernel.clear(g, reached, dist, queue, movieSeen);
+        root = rootID;
+        reached = 0;
+        totalSeparation = 0;
+        depth = -1;
+        if (rootID < 0) return this;
+        if (movieSeen == null && g instanceof BipartiteActorGraph) movieSeen = new boolean[g.numMovies()];
+        if (frontier == null) frontier = BFSKernel.frontierBuffer(g);
+        reached = BFSKernel.search(g, rootID, dist, parent, queue, movieSeen, frontier);
+        // the queue holds actors in nondecreasing distance, so each level starts where the distance goes up
+        depth = dist[queue[reached-1]];
+        if (levelStart.length < depth+2) levelStart = new int[Math.max(depth+2, levelStart.length*2)];
+        levelStart[0] = 0;
+        for (int k = 1; k < reached; k++) {
+            totalSeparation += dist[queue[k]];
+            if (dist[queue[k]] != dist[queue[k-1]]) levelStart[dist[queue[k]]] = k;
+        }
+        levelStart[depth+1] = reached;
+        return this;
+    }
+
+    /**
+     * Stops the tree from being searched again, so it can be handed to several readers at once, and returns it
+     */
+    public ShortestPathTree freeze() {
+        // trim the level index and drop the search-only buffers, since a shared tree is never searched again
+        if (!frozen) levelStart = Arrays.copyOf(levelStart, depth+2);
+        movieSeen = null;
+        frontier = null;
+        frozen = true;
+        return this;
+    }
+
+    /**
+     * Returns a frozen copy of this tree over a newer version of its graph, in which every actor kept their ID and new
+     * actors were appended (see GraphDelta); only valid when the update left this tree's component alone
+     */
+    ShortestPathTree rebase(IndexedActorGraph newer) {
+        int n = newer.numVertices();
+        int[] newDist = Arrays.copyOf(dist, n);
+        Arrays.fill(newDist, dist.length, n, -1);
+        ShortestPathTree tree = new ShortestPathTree(newer, newDist, Arrays.copyOf(parent, n));
+        System.arraycopy(queue, 0, tree.queue, 0, reached);
+        tree.root = root;
+        tree.reached = reached;
+        tree.totalSeparation = totalSeparation;
+        tree.depth = depth;
+        tree.levelStart = levelStart;       // freeze copies it
+        return tree.freeze();
+    }
+
+    /**
+     * Returns roughly how many bytes of heap the tree's arrays take up, counting the search buffers only while it can
+     * still be searched
+     */
+    public long estimatedBytes() {
+        long bytes = 3L * Integer.BYTES * dist.length + Integer.BYTES * levelStart.length;
+        if (movieSeen != null) bytes += movieSeen.length;
+        if (frontier != null) bytes += Long.BYTES * frontier.length;
+        return bytes;
+    }
+
+    /**
+     * Returns the graph this tree was searched over
+     */
+    public IndexedActorGraph graph() {
+        return g;
+    }
+
+    /**
+     * Returns the root's name, or null if the tree is empty
+     */
+    public String root() {
+        return root < 0 ? null : g.nameOf(root);
+    }
+
+    /**
+     * Returns how many hops an actor is from the root, or -1 if they aren't reachable
+     */
+    public int distance(String actor) {
+        int id = g.idOf(actor);
+        return id < 0 ? -1 : dist[id];
+    }
+
+    /**
+     * Returns how many hops the actor with the given ID is from the root, or -1 if they aren't reachable
+     */
+    public int distanceOf(int id) {
+        return dist[id];
+    }
+
+    /**
+     * Returns the ID of the actor the given actor was reached from, or -1 for the root
+     */
+    public int parentOf(int id) {
+        return parent[id];
+    }
+
+    /**
+     * Returns the ID of the k-th actor reached; actors come in order of nondecreasing distance, root first
+     */
+    public int reachedAt(int k) {
+        return queue[k];
+    }
+
+    /**
+     * Returns the largest distance from the root, or -1 if the tree is empty
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Returns the first position in reachedAt order of the actors at the given distance; they run up to
+     * levelStart(distance+1). Distances past the depth start at numVertices().
+     */
+    public int levelStart(int distance) {
+        if (distance <= 0) return 0;
+        return distance <= depth+1 ? levelStart[distance] : reached;
+    }
+
+    /**
+     * Returns how many actors are at the given distance from the root
+     */
+    public int levelSize(int distance) {
+        return distance < 0 ? 0 : levelStart(distance+1) - levelStart(distance);
+    }
+
+    /**
+     * Returns the sum of every reached actor's distance from the root
+     */
+    public long totalSeparation() {
+        return totalSeparation;
+    }
+
+    /**
+     * Returns the path from an actor back to the root as a list of names, or an empty list if they aren't reachable
+     */
+    public List<String> path(String actor) {
+        List<String> shortestPath = new ArrayList<>();
+        int id = g.idOf(actor);
+        if (id < 0 || dist[id] < 0) return shortestPath;
+        // follow parents until we pass the root
+        for (int v = id; v >= 0; v = parent[v]) shortestPath.add(g.nameOf(v));
+        return shortestPath;
+    }
+
+    public int numVertices() {
+        return reached;
+    }
+
+    public int numEdges() {
+        // one edge from every actor but the root
+        return Math.max(0, reached-1);
+    }
+
+    public Iterable<String> vertices() {
+        return new Iterable<String>() {
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    int k = 0;
+                    public boolean hasNext() {
+                        return k < reached;
+                    }
+                    public String next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        return g.nameOf(queue[k++]);
+                    }
+                };
+            }
+        };
+    }
+
+    public boolean hasVertex(String v) {
+        return distance(v) >= 0;
+    }
+
+    public boolean hasEdge(String u, String v) {
+        int a = g.idOf(u), b = g.idOf(v);
+        return a >= 0 && b >= 0 && dist[a] > 0 && parent[a] == b;
+    }
+
+    public Set<String> getLabel(String u, String v) {
+        return hasEdge(u, v) ? g.getLabel(u, v) : null;
+    }
+
+    public int outDegree(String v) {
+        return distance(v) > 0 ? 1 : 0;
+    }
+
+    public int inDegree(String v) {
+        int count = 0;
+        for (String child : inNeighbors(v)) count++;
+        return count;
+    }
+
+    public Iterable<String> outNeighbors(String v) {
+        int id = g.idOf(v);
+        if (id < 0 || dist[id] <= 0) return Collections.emptyList();
+        return Collections.singletonList(g.nameOf(parent[id]));
+    }
+
+    public Iterable<String> inNeighbors(String v) {
+        // children aren't indexed, so find them by scanning the next layer down
+        List<String> children = new ArrayList<>();
+        int id = g.idOf(v);
+        if (id < 0 || dist[id] < 0) return children;
+        for (int k = levelStart(dist[id]+1); k < levelStart(dist[id]+2); k++) {
+            if (parent[queue[k]] == id) children.add(g.nameOf(queue[k]));
+        }
+        return children;
+    }
+
+    public void insertVertex(String v) {
+        throw new UnsupportedOperationException("ShortestPathTree is read-only");
+    }
+
+    public void insertDirected(String u, String v, Set<String> e) {
+        throw new UnsupportedOperationException("ShortestPathTree is read-only");
+    }
+
+    public void insertUndirected(String u, String v, Set<String> e) {
+        throw new UnsupportedOperationException("ShortestPathTree is read-only");
+    }
+
+    public void removeVertex(String v) {
+        throw new UnsupportedOperationException("ShortestPathTree is read-only");
+    }
+
+    public void removeDirected(String u, String v) {
+        throw new UnsupportedOperationException("ShortestPathTree is read-only");
+    }
+
+    public void removeUndirected(String u, String v) {
+        throw new UnsupportedOperationException("ShortestPathTree is read-only");
+    }
+
+    public String toString() {
+        return "ShortestPathTree rooted at " + root() + ": " + reached + " actors";
+    }
+}
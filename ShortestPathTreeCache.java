@@ -0,0 +1,170 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps recently used shortest path trees keyed by their center, so repeated commands against the same center don't
+ * search the graph again. The cache is bounded both by a number of entries and by an estimate of the bytes the trees
+ * hold, and evicts the least recently used center when either is exceeded.
+ *
+ * Cached trees are frozen, so any number of threads can read the same tree at once. Searches run outside the cache's
+ * lock; if two threads miss on the same center at the same time, both search and the first tree stored wins.
+ *
+ * When the graph is updated in place of a rebuild (see GraphDelta), update moves the cache onto the new version,
+ * dropping only the trees whose component the update touched.
+ */
+public class ShortestPathTreeCache {
+
+    private IndexedActorGraph g;                                  // guarded by this, replaced by update
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String,ShortestPathTree> trees;   // in access order, least recently used first
+    private long bytes = 0;                                       // estimated bytes of every cached tree
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Takes a graph and the most trees and estimated bytes the cache may hold at once
+     */
+    public ShortestPathTreeCache(IndexedActorGraph g, int maxEntries, long maxBytes) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        if (maxBytes < 1) throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        this.g = g;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.trees = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Takes a graph and reads the budget from the bacon.cache.entries and bacon.cache.bytes system properties,
+     * defaulting to 16 trees and 256 MB
+     */
+    public ShortestPathTreeCache(IndexedActorGraph g) {
+        this(g, Integer.getInteger("bacon.cache.entries", 16), Long.getLong("bacon.cache.bytes", 256L << 20));
+    }
+
+    /**
+     * Returns the graph the cached trees were searched over
+     */
+    public synchronized IndexedActorGraph graph() {
+        return g;
+    }
+
+    /**
+     * Returns the cached shortest path tree rooted at the given center, or null without searching if it isn't cached
+     */
+    public synchronized ShortestPathTree cached(String center) {
+        ShortestPathTree tree = trees.get(center);
+        if (tree != null) hits.incrementAndGet();
+        return tree;
+    }
+
+    /**
+     * Returns the shortest path tree rooted at the given center, searching for it only if it isn't cached; the tree is
+     * shared and must only be read
+     */
+    public ShortestPathTree get(String center) {
+        IndexedActorGraph g;
+        synchronized (this) {
+            ShortestPathTree tree = trees.get(center);
+            if (tree != null) {
+                hits.incrementAndGet();
+                return tree;
+            }
+            g = this.g;
+        }
+        misses.incrementAndGet();
+        // unknown actors get an empty tree that isn't worth a slot in the cache
+        if (!g.hasVertex(center)) return new ShortestPathTree(g).freeze();
+        ShortestPathTree searched = new ShortestPathTree(g).search(center).freeze();
+        synchronized (this) {
+            // the graph may have been updated while we searched, in which case the tree is already out of date
+            if (g != this.g) return searched;
+            // someone else may have searched the same center while we were
+            ShortestPathTree existing = trees.get(center);
+            if (existing != null) return existing;
+            trees.put(center, searched);
+            bytes += searched.estimatedBytes();
+            evict();
+        }
+        return searched;
+    }
+
+    /**
+     * Drops least recently used trees until the cache is back within budget, always keeping the newest one
+     */
+    private void evict() {
+        Iterator<Map.Entry<String,ShortestPathTree>> oldest = trees.entrySet().iterator();
+        while (trees.size() > 1 && (trees.size() > maxEntries || bytes > maxBytes)) {
+            bytes -= oldest.next().getValue().estimatedBytes();
+            oldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Takes an incremental update of the cache's graph and switches the cache to the updated graph; trees that reached
+     * any actor whose casts changed are dropped and the rest are carried over. Returns how many trees were dropped; an
+     * update that changed nothing keeps the cache as it is.
+     */
+    public synchronized int update(GraphDelta.Update update) {
+        if (update.before() != g) throw new IllegalArgumentException("Update wasn't applied to this cache's graph");
+        // a delta that changed nothing leaves every tree as it is
+        if (update.after() == g) return 0;
+        int dropped = 0;
+        bytes = 0;
+        Iterator<Map.Entry<String,ShortestPathTree>> entries = trees.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String,ShortestPathTree> entry = entries.next();
+            if (update.touches(entry.getValue())) {
+                entries.remove();
+                dropped++;
+            }
+            else {
+                // nothing this tree reached changed, so only its arrays need to grow for any new actors
+                entry.setValue(entry.getValue().rebase(update.after()));
+                bytes += entry.getValue().estimatedBytes();
+            }
+        }
+        invalidations.addAndGet(dropped);
+        g = update.after();
+        return dropped;
+    }
+
+    /**
+     * Drops every cached tree
+     */
+    public synchronized void clear() {
+        trees.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return trees.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public long invalidations() {
+        return invalidations.get();
+    }
+
+    public String toString() {
+        return "ShortestPathTreeCache: " + size() + "/" + maxEntries + " trees, " + bytes() + "/" + maxBytes + " bytes, "
+                + hits() + " hits, " + misses() + " misses, " + evictions() + " evictions, "
+                + invalidations() + " invalidations";
+    }
+}
@@ -0,0 +1,124 @@
+import java.util.*;
+
+/**
+ * Chooses the order actor IDs are given in, so actors that are searched together sit together in memory. A search
+ * spends nearly all its time reading the dist and parent slots and the neighbor rows of the actors it reaches, and
+ * with IDs in file order those reads land all over the arrays. Relabeling the graph (see BipartiteActorGraph.relabel)
+ * packs them closer:
+ *
+ *   none     keep the order the loader gave (first appearance in the files)
+ *   bfs      Cuthill-McKee: breadth-first from a least-connected actor of each component, taking each actor's newly
+ *            found co-stars least-connected first, so every level of a search is one mostly contiguous run of IDs
+ *   degree   most-connected actors first, so the rows every search reads sit together at the front of the arrays
+ *
+ * An actor's connectedness here is their number of co-star slots (the total cast size of their movies), which is a
+ * close stand-in for degree that doesn't need the co-star rows built. Ties keep the loader's order.
+ *
+ * Relabeling only renumbers actors. The s, d, c and i listings print the same thing after it, since they are ordered
+ * by name (ties in a ranking included, see Rankings) rather than by ID. Paths from p and from batch runs may go
+ * through different co-stars of the same length, since which closer co-star becomes an actor's parent depends on the
+ * numbering. The relabeled graph still keeps each actor's original ID, the loader's numbering of actors by first
+ * appearance. The order is chosen with the bacon.order system property when the graph is built, and saved in its
+ * snapshot.
+ */
+public class VertexOrder {
+
+    // the orders by name, at the index each is saved under in a snapshot
+    static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList("none", "bfs", "degree"));
+
+    private VertexOrder() {}
+
+    /**
+     * Returns the snapshot code of an order name, throwing if there's no order by that name
+     */
+    public static int code(String name) {
+        int code = NAMES.indexOf(name);
+        if (code < 0) throw new IllegalArgumentException("Unknown vertex order " + name + ", expected one of " + NAMES);
+        return code;
+    }
+
+    /**
+     * Takes a graph and the name of an order and returns the graph relabeled in that order (the same graph for none)
+     */
+    public static BipartiteActorGraph apply(BipartiteActorGraph g, String name) {
+        if (code(name) == 0) return g;
+        long start = Metrics.start();
+        int[] order = name.equals("bfs") ? cuthillMcKee(g) : byDegree(g);
+        BipartiteActorGraph relabeled = g.relabel(order);
+        Metrics.time(Metrics.timer("load.reorder"), start);
+        return relabeled;
+    }
+
+    /**
+     * Returns the actor IDs most co-star slots first, as order[newID] = oldID
+     */
+    public static int[] byDegree(BipartiteActorGraph g) {
+        long[] slots = coStarSlots(g);
+        long[] keys = new long[slots.length];
+        // negate so the sort puts the largest first, with the old ID breaking ties
+        for (int a = 0; a < keys.length; a++) keys[a] = (-slots[a] << 32) | a;
+        Arrays.sort(keys);
+        int[] order = new int[keys.length];
+        for (int k = 0; k < keys.length; k++) order[k] = (int) keys[k];
+        return order;
+    }
+
+    /**
+     * Returns the actor IDs in Cuthill-McKee order, as order[newID] = oldID
+     */
+    public static int[] cuthillMcKee(BipartiteActorGraph g) {
+        int n = g.numVertices();
+        long[] slots = coStarSlots(g);
+        // each component is started from its least-connected actor, so try starts in that order
+        long[] starts = new long[n];
+        for (int a = 0; a < n; a++) starts[a] = (slots[a] << 32) | a;
+        Arrays.sort(starts);
+
+        int[] order = new int[n];
+        boolean[] placed = new boolean[n], movieSeen = new boolean[g.numMovies()];
+        long[] found = new long[16];
+        int head = 0, tail = 0;
+        for (long start : starts) {
+            int source = (int) start;
+            if (placed[source]) continue;
+            placed[source] = true;
+            order[tail++] = source;
+            // the order doubles as the search's queue
+            while (head < tail) {
+                int v = order[head++];
+                int count = 0;
+                for (int k = g.movieStart(v); k < g.movieEnd(v); k++) {
+                    int m = g.movieAt(k);
+                    if (movieSeen[m]) continue;
+                    movieSeen[m] = true;
+                    for (int c = g.castStart(m); c < g.castEnd(m); c++) {
+                        int w = g.castAt(c);
+                        if (placed[w]) continue;
+                        placed[w] = true;
+                        if (count == found.length) found = Arrays.copyOf(found, count*2);
+                        found[count++] = (slots[w] << 32) | w;
+                    }
+                }
+                // queue the co-stars this actor found, least-connected first
+                Arrays.sort(found, 0, count);
+                for (int k = 0; k < count; k++) order[tail++] = (int) found[k];
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Returns each actor's total cast size over their movies, capped to fit the high half of a sort key
+     */
+    private static long[] coStarSlots(BipartiteActorGraph g) {
+        long[] slots = new long[g.numVertices()];
+        for (int a = 0; a < slots.length; a++) {
+            long total = 0;
+            for (int k = g.movieStart(a); k < g.movieEnd(a); k++) {
+                total += g.castEnd(g.movieAt(k)) - g.castStart(g.movieAt(k));
+            }
+            slots[a] = Math.min(total, Integer.MAX_VALUE);
+        }
+        return slots;
+    }
+}
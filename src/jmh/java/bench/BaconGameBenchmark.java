@@ -0,0 +1,266 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the load, build, search, path and centrality steps of BaconGame, over the synthetic datasets
+ * BaconBenchmark.writeSynthetic generates (power-law cast sizes, with "Kevin Bacon" the most popular actor) at 10k,
+ * 100k and 1M actors. Run them with the GC profiler (-prof gc, on by default from gradle jmh, see build.gradle) to get
+ * bytes allocated per operation alongside the time. BaconBenchmark runs the same operations as a quick check without
+ * JMH. The game is called through method handles (see Game).
+ *
+ * Each dataset is written and loaded once per trial. The legacy AdjacencyMapGraph build and the full c ranking grow
+ * too fast to finish at 1M actors, so their states only go up to 100k and 10k actors; pass -p size=... to the jar to
+ * run them at other sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BaconGameBenchmark {
+
+    private static final String CENTER = "Kevin Bacon";
+    private static final int PAIRS = 200;               // path queries per shortestPath invocation
+
+    /**
+     * The three text files of one synthetic dataset, in a temporary directory removed after the trial
+     */
+    public abstract static class Inputs {
+        File dir;
+        String actors, movies, movieActors;
+
+        void write(int size) throws Throwable {
+            dir = Files.createTempDirectory("bacon-jmh").toFile();
+            actors = new File(dir, "actors.txt").getPath();
+            movies = new File(dir, "movies.txt").getPath();
+            movieActors = new File(dir, "movie-actors.txt").getPath();
+            Game.writeSynthetic(size, actors, movies, movieActors);
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() {
+            for (File f : dir.listFiles()) f.delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * A dataset at every size, loaded into both graph modes, with a tree searched from the center and the actors the
+     * path queries go to
+     */
+    @State(Scope.Benchmark)
+    public static class Dataset extends Inputs {
+        @Param({"10000", "100000", "1000000"})
+        public int size;
+
+        Object casts, g, components;            // bipartite graph, compact graph, its component index
+        Object tree, legacyTree;                // frozen tree from the center, and the one BaconGame.bfs builds
+        Object searched, searchedCasts;         // trees the search benchmarks search again every invocation
+        String far;
+        String[] pairs;
+        int[] dist, parent, queue;
+
+        @Setup(Level.Trial)
+        public void setup() throws Throwable {
+            write(size);
+            casts = Game.load.invoke(Game.newLoader.invoke(), actors, movies, movieActors);
+            g = Game.fromBipartite.invoke(casts);
+            components = Game.newComponents.invoke(g);
+            // path queries go to the actors farthest from the center
+            tree = Game.freeze.invoke(Game.search.invoke(Game.newTree.invoke(g), CENTER));
+            legacyTree = Game.bfs.invoke(g, CENTER);
+            int reached = (Integer) Game.numVertices.invoke(tree);
+            far = (String) Game.nameOf.invoke(g, Game.reachedAt.invoke(tree, reached-1));
+            pairs = new String[PAIRS];
+            Random random = new Random(1);
+            for (int k = 0; k < pairs.length; k++) pairs[k] = (String) Game.nameOf.invoke(g, Game.reachedAt.invoke(tree, random.nextInt(reached)));
+            searched = Game.newTree.invoke(g);
+            searchedCasts = Game.newTree.invoke(casts);
+            int n = (Integer) Game.numVertices.invoke(g);
+            dist = new int[n];
+            parent = new int[n];
+            queue = new int[n];
+            Arrays.fill(dist, -1);
+        }
+    }
+
+    /**
+     * A dataset small enough for the legacy AdjacencyMapGraph build
+     */
+    @State(Scope.Benchmark)
+    public static class LegacyDataset extends Inputs {
+        @Param({"10000", "100000"})
+        public int size;
+
+        @Setup(Level.Trial)
+        public void setup() throws Throwable {
+            write(size);
+        }
+    }
+
+    /**
+     * A dataset small enough to search from every actor, and how many centers the c ranking lists
+     */
+    @State(Scope.Benchmark)
+    public static class CentralityDataset extends Inputs {
+        @Param({"10000"})
+        public int size;
+
+        @Param({"10"})
+        public int centers;
+
+        Object g;
+
+        @Setup(Level.Trial)
+        public void setup() throws Throwable {
+            write(size);
+            g = Game.fromBipartite.invoke(Game.load.invoke(Game.newLoader.invoke(), actors, movies, movieActors));
+        }
+    }
+
+    /**
+     * A dataset relabeled into each vertex order, plus a random one standing in for IDs with no locality at all
+     */
+    @State(Scope.Benchmark)
+    public static class OrderedDataset {
+        @Param({"shuffled", "none", "bfs", "degree"})
+        public String order;
+
+        Object searched, searchedCasts;
+
+        @Setup(Level.Trial)
+        public void setup(Dataset data) throws Throwable {
+            Object relabeled;
+            if (order.equals("shuffled")) {
+                int[] shuffled = new int[(Integer) Game.numVertices.invoke(data.casts)];
+                for (int k = 0; k < shuffled.length; k++) shuffled[k] = k;
+                Random random = new Random(1);
+                for (int k = shuffled.length-1; k > 0; k--) {
+                    int swap = random.nextInt(k+1), id = shuffled[k];
+                    shuffled[k] = shuffled[swap];
+                    shuffled[swap] = id;
+                }
+                relabeled = Game.relabel.invoke(data.casts, shuffled);
+            }
+            else relabeled = Game.reorder.invoke(data.casts, order);
+            searched = Game.newTree.invoke(Game.fromBipartite.invoke(relabeled));
+            searchedCasts = Game.newTree.invoke(relabeled);
+        }
+    }
+
+    @Benchmark
+    public Object fileNameToMap(Dataset data) throws Throwable {
+        return Game.fileNameToMap.invoke(data.actors);
+    }
+
+    @Benchmark
+    public Object mapMoviesToActors(Dataset data) throws Throwable {
+        return Game.mapMoviesToActors.invoke(data.actors, data.movies, data.movieActors);
+    }
+
+    @Benchmark
+    public Object buildGraph(LegacyDataset data) throws Throwable {
+        return Game.buildGraph.invoke(data.actors, data.movies, data.movieActors);
+    }
+
+    @Benchmark
+    public Object load(Dataset data) throws Throwable {
+        return Game.load.invoke(Game.newLoader.invoke(), data.actors, data.movies, data.movieActors);
+    }
+
+    @Benchmark
+    public Object buildCompactGraph(Dataset data) throws Throwable {
+        return Game.fromBipartite.invoke(data.casts);
+    }
+
+    @Benchmark
+    public Object bfs(Dataset data) throws Throwable {
+        return Game.bfs.invoke(data.g, CENTER);
+    }
+
+    @Benchmark
+    public Object search(Dataset data) throws Throwable {
+        return Game.search.invoke(data.searched, CENTER);
+    }
+
+    @Benchmark
+    public Object searchBipartite(Dataset data) throws Throwable {
+        return Game.search.invoke(data.searchedCasts, CENTER);
+    }
+
+    // the same search with no bottom-up levels, to compare against the direction-optimizing one above
+    @Benchmark
+    public Object searchTopDown(Dataset data) throws Throwable {
+        Object reached = Game.kernelSearch.invoke(data.g, Game.idOf.invoke(data.g, CENTER), data.dist, data.parent, data.queue, null);
+        Game.kernelClear.invoke(data.g, reached, data.dist, data.queue, null);
+        return reached;
+    }
+
+    @Benchmark
+    public Object getPath(Dataset data) throws Throwable {
+        return Game.getPath.invoke(data.legacyTree, data.far);
+    }
+
+    @Benchmark
+    public Object getPathTree(Dataset data) throws Throwable {
+        return Game.getPathTree.invoke(data.tree, data.far);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public Object[] shortestPath(Dataset data) throws Throwable {
+        Object[] paths = new Object[PAIRS];
+        for (int k = 0; k < PAIRS; k++) paths[k] = Game.shortestPath.invoke(data.g, data.pairs[k], CENTER);
+        return paths;
+    }
+
+    @Benchmark
+    public Object averageSeparation(Dataset data) throws Throwable {
+        return Game.averageSeparation.invoke(data.legacyTree, CENTER);
+    }
+
+    @Benchmark
+    public Object averageSeparationTree(Dataset data) throws Throwable {
+        return Game.averageSeparationTree.invoke(data.tree);
+    }
+
+    // the whole c command: every actor's average separation, then the best centers from it
+    @Benchmark
+    public Object cRanking(CentralityDataset data) throws Throwable {
+        Object separations = Game.averageSeparations.invoke(Game.newEngine.invoke(data.g));
+        return Game.centers.invoke(data.g, separations, data.centers);
+    }
+
+    @Benchmark
+    public Object eRanking(Dataset data) throws Throwable {
+        return Game.separations.invoke(Game.sampleUpTo.invoke(Game.newSampled.invoke(data.g, data.components), 16));
+    }
+
+    @Benchmark
+    public Object reorderBfs(Dataset data) throws Throwable {
+        return Game.reorder.invoke(data.casts, "bfs");
+    }
+
+    @Benchmark
+    public Object reorderDegree(Dataset data) throws Throwable {
+        return Game.reorder.invoke(data.casts, "degree");
+    }
+
+    @Benchmark
+    public Object searchOrdered(OrderedDataset data) throws Throwable {
+        return Game.search.invoke(data.searched, CENTER);
+    }
+
+    @Benchmark
+    public Object searchOrderedBipartite(OrderedDataset data) throws Throwable {
+        return Game.search.invoke(data.searchedCasts, CENTER);
+    }
+}
@@ -0,0 +1,99 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Random;
+
+/**
+ * Handles on the game's methods for the benchmarks. The game's classes are in the unnamed package, which code in a
+ * package can't name, and JMH won't run benchmarks from the unnamed package, so the benchmarks reach the game through
+ * these. Each handle takes and returns Objects (primitives boxed), and since the handles are static final the JIT
+ * treats them as constants and inlines through them, so a call costs about what a direct one would.
+ */
+final class Game {
+
+    static final MethodHandle fileNameToMap = method("BaconGame", "fileNameToMap", "java.lang.String");
+    static final MethodHandle mapMoviesToActors = method("BaconGame", "mapMoviesToActors", "java.lang.String", "java.lang.String", "java.lang.String");
+    static final MethodHandle buildGraph = method("BaconGame", "buildGraph", "java.lang.String", "java.lang.String", "java.lang.String");
+    static final MethodHandle bfs = method("BaconGame", "bfs", "Graph", "java.lang.Object");
+    static final MethodHandle getPath = method("BaconGame", "getPath", "Graph", "java.lang.Object");
+    static final MethodHandle getPathTree = method("BaconGame", "getPath", "ShortestPathTree", "java.lang.String");
+    static final MethodHandle shortestPath = method("BaconGame", "shortestPath", "IndexedActorGraph", "java.lang.String", "java.lang.String");
+    static final MethodHandle averageSeparation = method("BaconGame", "averageSeparation", "Graph", "java.lang.Object");
+    static final MethodHandle averageSeparationTree = method("BaconGame", "averageSeparation", "ShortestPathTree");
+    static final MethodHandle synthetic = method("BaconBenchmark", "writeSynthetic", "int", "java.lang.String", "java.lang.String", "java.lang.String", "java.util.Random");
+
+    static final MethodHandle newLoader = constructor("GraphLoader");
+    static final MethodHandle load = method("GraphLoader", "load", "java.lang.String", "java.lang.String", "java.lang.String");
+    static final MethodHandle fromBipartite = method("CompactActorGraph", "fromBipartite", "BipartiteActorGraph");
+    static final MethodHandle relabel = method("BipartiteActorGraph", "relabel", "[I");
+    static final MethodHandle reorder = method("VertexOrder", "apply", "BipartiteActorGraph", "java.lang.String");
+    static final MethodHandle newComponents = constructor("ComponentIndex", "IndexedActorGraph");
+    static final MethodHandle numVertices = method("Graph", "numVertices");
+    static final MethodHandle idOf = method("IndexedActorGraph", "idOf", "java.lang.String");
+    static final MethodHandle nameOf = method("IndexedActorGraph", "nameOf", "int");
+
+    static final MethodHandle newTree = constructor("ShortestPathTree", "IndexedActorGraph");
+    static final MethodHandle search = method("ShortestPathTree", "search", "java.lang.String");
+    static final MethodHandle freeze = method("ShortestPathTree", "freeze");
+    static final MethodHandle reachedAt = method("ShortestPathTree", "reachedAt", "int");
+    static final MethodHandle kernelSearch = method("BFSKernel", "search", "IndexedActorGraph", "int", "[I", "[I", "[I", "[Z");
+    static final MethodHandle kernelClear = method("BFSKernel", "clear", "IndexedActorGraph", "int", "[I", "[I", "[Z");
+
+    static final MethodHandle newEngine = constructor("CentralityEngine", "IndexedActorGraph");
+    static final MethodHandle averageSeparations = method("CentralityEngine", "averageSeparations");
+    static final MethodHandle centers = method("Rankings", "centers", "IndexedActorGraph", "[D", "int");
+    static final MethodHandle newSampled = constructor("SampledCentrality", "IndexedActorGraph", "ComponentIndex");
+    static final MethodHandle sampleUpTo = method("SampledCentrality", "sampleUpTo", "int");
+    static final MethodHandle separations = method("SampledCentrality", "separations");
+
+    private Game() {}
+
+    /**
+     * Writes a synthetic dataset's three files, seeded by its size
+     */
+    static void writeSynthetic(int size, String actors, String movies, String movieActors) throws Throwable {
+        synthetic.invoke(size, actors, movies, movieActors, new Random(size));
+    }
+
+    /**
+     * Returns a handle on a method (static or not; the receiver comes first) or a constructor, taking and returning
+     * Objects, with the parameter types given as class names
+     */
+    private static MethodHandle method(String owner, String name, String... parameters) {
+        try {
+            Method method = type(owner).getDeclaredMethod(name, types(parameters));
+            method.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            return handle.asType(handle.type().generic());
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No method " + owner + "." + name, e);
+        }
+    }
+
+    private static MethodHandle constructor(String owner, String... parameters) {
+        try {
+            Constructor<?> constructor = type(owner).getDeclaredConstructor(types(parameters));
+            constructor.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor);
+            return handle.asType(handle.type().generic());
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No constructor " + owner, e);
+        }
+    }
+
+    private static Class<?>[] types(String... names) throws ClassNotFoundException {
+        Class<?>[] types = new Class<?>[names.length];
+        for (int k = 0; k < names.length; k++) types[k] = type(names[k]);
+        return types;
+    }
+
+    private static Class<?> type(String name) throws ClassNotFoundException {
+        if (name.equals("int")) return int.class;
+        return Class.forName(name, false, Game.class.getClassLoader());
+    }
+}